@@ -2,13 +2,16 @@ package uk.dsx.ats;
 
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dsx.dto.trade.DSXOrderStatusResult;
+import org.knowm.xchange.dto.Order;
 import org.knowm.xchange.dto.account.Balance;
-import org.knowm.xchange.dto.marketdata.OrderBook;
 import uk.dsx.ats.data.PriceProperties;
+import uk.dsx.ats.jfr.CancelPolicyEvent;
+import uk.dsx.ats.jfr.DecisionCycleEvent;
 import uk.dsx.ats.repositories.AccountRepository;
 import uk.dsx.ats.repositories.AveragePriceRepository;
 import uk.dsx.ats.repositories.MarketDataRepository;
 import uk.dsx.ats.repositories.TradeRepository;
+import uk.dsx.ats.risk.RiskLimitException;
 import uk.dsx.ats.utils.*;
 
 import java.math.BigDecimal;
@@ -16,6 +19,8 @@ import java.math.RoundingMode;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 import static uk.dsx.ats.utils.DSXUtils.*;
 
@@ -27,38 +32,95 @@ class Algorithm {
 
     enum OrderCheckingResult {
         ORDER_FILLED,
+        ORDER_CANCELLED,
         NEED_REPLACE_ORDER,
         ACCEPTABLE_ORDER_PRICE
     }
 
     interface CancelOrderPolicy {
-        boolean shouldCancelOrder(DSXOrderStatusResult order, OrderBook orderBook);
+        boolean shouldCancelOrder(DSXOrderStatusResult order, PriceLevelBook orderBook);
+
+        /**
+         * How close the order is to being cancelled by this policy, 0 - far away, 1 - at the limit
+         */
+        default double proximity(DSXOrderStatusResult order, PriceLevelBook orderBook) {
+            return 0;
+        }
     }
 
     private final MarketDataRepository marketDataRepository;
     private final TradeRepository tradeRepository;
     private final AccountRepository accountRepository;
-    private final List<CancelOrderPolicy> cancelOrderPolicies;
     private final AveragePriceRepository averagePriceRepository;
-    private final PriceProperties priceProperties;
+    private final StaleDataWatchdog watchdog;
+    private final Supplier<PriceProperties> propertiesSupplier;
+    private final TradingClock clock;
+    // requests made to DSX so far, check intervals are adapted to the number made by each check
+    private final LongSupplier requestCounter;
+
+    // taken from propertiesSupplier at the start of each decision cycle
+    private PriceProperties priceProperties;
+    // verdicts of these policies depend only on bid levels from the next bid after the order and above
+    private List<CancelOrderPolicy> orderBookPolicies;
+    private CancelOrderPolicy priceHasBeenChanged;
+    private AdaptiveInterval priceCheckInterval;
+    private AdaptiveInterval orderCheckInterval;
+
+    Algorithm(Supplier<PriceProperties> propertiesSupplier, MarketDataRepository marketDataRepository, TradeRepository tradeRepository, AccountRepository accountRepository, AveragePriceRepository averagePriceRepository, StaleDataWatchdog watchdog) {
+        this(propertiesSupplier, marketDataRepository, tradeRepository, accountRepository, averagePriceRepository, watchdog,
+                TradingClock.SYSTEM, DSXUtils::getDsxRequestCount);
+    }
 
-    Algorithm(PriceProperties priceProperties, MarketDataRepository marketDataRepository, TradeRepository tradeRepository, AccountRepository accountRepository, AveragePriceRepository averagePriceRepository) {
+    Algorithm(Supplier<PriceProperties> propertiesSupplier, MarketDataRepository marketDataRepository, TradeRepository tradeRepository, AccountRepository accountRepository, AveragePriceRepository averagePriceRepository, StaleDataWatchdog watchdog, TradingClock clock, LongSupplier requestCounter) {
         this.marketDataRepository = marketDataRepository;
+        this.watchdog = watchdog;
         this.tradeRepository = tradeRepository;
         this.accountRepository = accountRepository;
+        this.averagePriceRepository = averagePriceRepository;
+        this.propertiesSupplier = propertiesSupplier;
+        this.clock = clock;
+        this.requestCounter = requestCounter;
+
+        applyProperties(propertiesSupplier.get());
+    }
+
+    private void applyProperties(PriceProperties priceProperties) {
         this.priceProperties = priceProperties;
 
-        this.cancelOrderPolicies = Arrays.asList(
+        this.orderBookPolicies = Arrays.asList(
                 new SingleBidRow(),
                 new StepToMove(priceProperties.getStepToMove()),
                 new VolumeToMove(priceProperties.getVolumeToMove()),
-                new Sensitivity(priceProperties.getSensitivity()),
-                new PriceHasBeenChanged()
+                new Sensitivity(priceProperties.getSensitivity())
         );
-        this.averagePriceRepository = averagePriceRepository;
+        this.priceHasBeenChanged = new PriceHasBeenChanged();
+
+        this.priceCheckInterval = new AdaptiveInterval(priceProperties.getAveragePriceUpdateTime(),
+                priceProperties.getRequestsPerMinute(), priceProperties.getMaxIntervalMultiplier().doubleValue(),
+                priceProperties.getVolatilityThreshold().doubleValue());
+        this.orderCheckInterval = new AdaptiveInterval(TimeUnit.SECONDS.toMillis(priceProperties.getWaitingTimeForOrderCheck()),
+                priceProperties.getRequestsPerMinute(), priceProperties.getMaxIntervalMultiplier().doubleValue(),
+                priceProperties.getVolatilityThreshold().doubleValue());
     }
 
     boolean execute() throws Exception {
+        PriceProperties properties = propertiesSupplier.get();
+        if (properties != priceProperties) {
+            logInfo("Applying new price properties");
+            applyProperties(properties);
+        }
+
+        DecisionCycleEvent event = new DecisionCycleEvent();
+        event.begin();
+        event.result = "FAILED";
+        try {
+            return execute(event);
+        } finally {
+            event.commit();
+        }
+    }
+
+    private boolean execute(DecisionCycleEvent event) throws Exception {
         tradeRepository.cancelAllOrders();
 
         logInfo("Account funds: {}", accountRepository.getBalance());
@@ -72,20 +134,38 @@ class Algorithm {
 
         if (orderVolume.compareTo(priceProperties.getMinOrderSize()) < 0) {
             logError("Couldn't place order. Not enough money.");
+            event.result = "NOT_ENOUGH_FUNDS";
             return true;
         }
 
         //placing order
-        String orderId = tradeRepository.buyLimit(orderVolume, DSX_CURRENCY_PAIR, orderPrice);
+        String orderId;
+        try {
+            orderId = tradeRepository.buyLimit(orderVolume, DSX_CURRENCY_PAIR, orderPrice);
+        } catch (RiskLimitException e) {
+            logError("Order wasn't placed: {}", e.getMessage());
+            event.result = "REJECTED";
+            return false;
+        }
         logInfo("Order with id {} was placed", orderId);
+        event.orderId = orderId;
+        event.orderPrice = orderPrice.toPlainString();
+        event.orderVolume = orderVolume.toPlainString();
 
         OrderStateChecker orderChecker = new OrderStateChecker(Long.parseLong(orderId));
 
-        if (orderChecker.awaitStateChanged() == OrderCheckingResult.ORDER_FILLED) {
+        OrderCheckingResult result = orderChecker.awaitStateChanged();
+        if (result == OrderCheckingResult.ORDER_FILLED) {
+            event.result = "FILLED";
             return true;
+        } else if (result == OrderCheckingResult.ORDER_CANCELLED) {
+            logInfo("Order was cancelled outside of the algorithm");
+            event.result = "CANCELLED";
+            return false;
         } else {
             logInfo("Cancelling order");
             tradeRepository.cancelOrder(orderId);
+            event.result = "REPLACED";
             return false;
         }
     }
@@ -111,8 +191,47 @@ class Algorithm {
         }
     }
 
+    private PriceLevelBook getOrderBook() throws Exception {
+        PriceLevelBook orderBook = marketDataRepository.getPriceLevels();
+        watchdog.touch(StaleDataWatchdog.Input.ORDER_BOOK);
+        return orderBook;
+    }
+
+    private BigDecimal getAveragePrice() throws Exception {
+        BigDecimal averagePrice = averagePriceRepository.getAveragePrice();
+        if (averagePrice != null) {
+            watchdog.touch(StaleDataWatchdog.Input.REFERENCE_PRICE);
+        }
+        return averagePrice;
+    }
+
+    private static boolean shouldCancelOrder(CancelOrderPolicy policy, DSXOrderStatusResult order, PriceLevelBook orderBook) {
+        CancelPolicyEvent event = new CancelPolicyEvent();
+        event.begin();
+        boolean cancel = policy.shouldCancelOrder(order, orderBook);
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.policy = policy.getClass().getSimpleName();
+            event.orderPrice = order.getRate() == null ? null : order.getRate().toPlainString();
+            event.cancel = cancel;
+            event.proximity = policy.proximity(order, orderBook);
+            event.commit();
+        }
+        return cancel;
+    }
+
+    private static double ratio(BigDecimal value, BigDecimal limit) {
+        return limit.signum() > 0 ? value.doubleValue() / limit.doubleValue() : 0;
+    }
+
+    private static BigDecimal toBigDecimal(double value) {
+        return Double.isNaN(value) ? null : BigDecimal.valueOf(value);
+    }
+
     private BigDecimal getExchangeRate(CurrencyPair indicativePair) throws Exception {
         if (DSX_CURRENCY_PAIR.equals(indicativePair)) {
+            watchdog.touch(StaleDataWatchdog.Input.EXCHANGE_RATE);
             return BigDecimal.ONE;
         }
 
@@ -122,6 +241,7 @@ class Algorithm {
             logInfo(String.format("\t Unable to get exchange rate for currencies: %s/%s", DSX_CURRENCY_PAIR.counter, EXCHANGES_CURRENCY_PAIR.counter));
             return null;
         } else {
+            watchdog.touch(StaleDataWatchdog.Input.EXCHANGE_RATE);
             return exchangeRate.multiply(priceProperties.getFxPercentage());
         }
     }
@@ -131,20 +251,33 @@ class Algorithm {
      */
     class PriceMonitor {
 
+        // how close the last checked price was to the acceptance threshold, 0 - far away, 1 - at the threshold
+        private double lastProximity;
+
         BigDecimal awaitAcceptablePrice() throws Exception {
             while (true) {
                 logInfo(" - Average price is checking");
-                BigDecimal bestBidPrice = new OrderBookHelper(marketDataRepository.getOrderBook()).bestBidPrice();
-                BigDecimal averagePrice = averagePriceRepository.getAveragePrice();
-
-                if (isPriceAcceptable(bestBidPrice, averagePrice)) {
+                long requests = requestCounter.getAsLong();
+                double bestBid = getOrderBook().bestBidPrice();
+                BigDecimal bestBidPrice = toBigDecimal(bestBid);
+                BigDecimal averagePrice = getAveragePrice();
+                priceCheckInterval.onPrice(bestBid);
+
+                boolean acceptable = isPriceAcceptable(bestBidPrice, averagePrice);
+                priceCheckInterval.onRequests(requestCounter.getAsLong() - requests);
+                if (acceptable) {
                     return bestBidPrice;
                 }
-                TimeUnit.MILLISECONDS.sleep(priceProperties.getAveragePriceUpdateTime());
+
+                long interval = priceCheckInterval.next(lastProximity);
+                logInfo("\t Next price check in {} ms", interval);
+                clock.sleep(interval);
             }
         }
 
         boolean isPriceAcceptable(BigDecimal bestBid, BigDecimal averagePrice) throws Exception {
+            lastProximity = 0;
+
             if (averagePrice == null) {
                 logInfo("\t Can't calculate average price");
                 return false;
@@ -164,35 +297,73 @@ class Algorithm {
                 BigDecimal pricePercentage = priceProperties.getPricePercentage();
                 BigDecimal bidWithOffset = bestBid.multiply(pricePercentage).multiply(exchangeRate);
                 logInfo("\t Average price = {}; Relative offset = {}; Best bid = {} (multiplied = {})", averagePrice, pricePercentage, bestBid, bidWithOffset);
+
+                // distance between prices is measured in pricePercentage margins
+                double margin = Math.max(pricePercentage.doubleValue() - 1, 0.001) * bidWithOffset.doubleValue();
+                lastProximity = 1 - Math.abs(averagePrice.doubleValue() - bidWithOffset.doubleValue()) / margin;
+
                 return averagePrice.compareTo(bidWithOffset) > 0;
             }
         }
+
+        double getLastProximity() {
+            return lastProximity;
+        }
     }
 
-    class OrderStateChecker {
+    /**
+     * Order book policies are evaluated again only when a bid level they depend on has changed since the last check,
+     * changes are tracked by a listener of the price level book
+     */
+    class OrderStateChecker implements PriceLevelBook.ChangeListener {
 
         private final long orderId;
 
+        private double lastProximity;
+        private double orderBookProximity;
+
+        private PriceLevelBook watchedBook;
+        // guarded by the order book lock, which is held while the book notifies listeners
+        private boolean orderBookChanged = true;
+        private double watchedFromPrice = Double.NEGATIVE_INFINITY;
+
         OrderStateChecker(long orderId) {
             this.orderId = orderId;
         }
 
         OrderCheckingResult awaitStateChanged() throws Exception {
-            while (true) {
-                logInfo("");
-                logInfo("================ Checking order state");
-                OrderCheckingResult result = checkOrder();
-                if (result == OrderCheckingResult.ACCEPTABLE_ORDER_PRICE) {
-                    logInfo("All conditions are good.");
-                    TimeUnit.SECONDS.sleep(priceProperties.getWaitingTimeForOrderCheck());
-                } else {
-                    return result;
+            try {
+                while (true) {
+                    logInfo("");
+                    logInfo("================ Checking order state");
+                    long requests = requestCounter.getAsLong();
+                    OrderCheckingResult result = checkOrder();
+                    orderCheckInterval.onRequests(requestCounter.getAsLong() - requests);
+                    if (result == OrderCheckingResult.ACCEPTABLE_ORDER_PRICE) {
+                        long interval = orderCheckInterval.next(lastProximity);
+                        logInfo("All conditions are good. Next check in {} ms", interval);
+                        clock.sleep(interval);
+                    } else {
+                        return result;
+                    }
                 }
+            } finally {
+                if (watchedBook != null) {
+                    watchedBook.removeListener(this);
+                }
+            }
+        }
+
+        @Override
+        public void onLevelChanged(Order.OrderType side, double price, double volume) {
+            if (side == Order.OrderType.BID && price >= watchedFromPrice) {
+                orderBookChanged = true;
             }
         }
 
         private OrderCheckingResult checkOrder() throws Exception {
             DSXOrderStatusResult order = tradeRepository.getOrderStatus(orderId);
+            watchdog.touch(StaleDataWatchdog.Input.ORDER_STATUS);
 
             logOrderStatus(order.getStatus());
 
@@ -200,15 +371,49 @@ class Algorithm {
             if (order.getStatus() == 1) {
                 logInfo("Order was filled");
                 return OrderCheckingResult.ORDER_FILLED;
+            } else if (order.getStatus() == 2) {
+                // e.g. by stale data watchdog
+                return OrderCheckingResult.ORDER_CANCELLED;
             } else {
                 logInfo("Price = {}; Volume = {}/{}", order.getRate(), order.getRemainingVolume(), order.getVolume());
             }
 
-            OrderBook orderBook = marketDataRepository.getOrderBook();
+            PriceLevelBook orderBook = getOrderBook();
+            if (watchedBook != orderBook) {
+                if (watchedBook != null) {
+                    watchedBook.removeListener(this);
+                }
+                orderBook.addListener(this);
+                watchedBook = orderBook;
+            }
+            synchronized (orderBook) {
+                orderCheckInterval.onPrice(orderBook.bestBidPrice());
+
+                if (!orderBookChanged) {
+                    logInfo(" - Bid levels down to the next bid after the order are unchanged");
+                } else {
+                    orderBookChanged = false;
+                    // SingleBidRow depends on the levels below too while the next bid is the best one
+                    double nextBidPrice = orderBook.bidPriceAfter(order.getRate().doubleValue());
+                    watchedFromPrice = Double.isNaN(nextBidPrice) || nextBidPrice == orderBook.bestBidPrice()
+                            ? Double.NEGATIVE_INFINITY : nextBidPrice;
+
+                    if (orderBookPolicies.stream().anyMatch(policy -> shouldCancelOrder(policy, order, orderBook))) {
+                        return OrderCheckingResult.NEED_REPLACE_ORDER;
+                    }
+                    orderBookProximity = orderBookPolicies.stream()
+                            .mapToDouble(policy -> policy.proximity(order, orderBook))
+                            .max()
+                            .orElse(0);
+                }
+            }
 
-            return cancelOrderPolicies.stream().anyMatch(policy -> policy.shouldCancelOrder(order, orderBook))
-                    ? OrderCheckingResult.NEED_REPLACE_ORDER
-                    : OrderCheckingResult.ACCEPTABLE_ORDER_PRICE;
+            if (shouldCancelOrder(priceHasBeenChanged, order, orderBook)) {
+                return OrderCheckingResult.NEED_REPLACE_ORDER;
+            }
+
+            lastProximity = Math.max(orderBookProximity, priceHasBeenChanged.proximity(order, orderBook));
+            return OrderCheckingResult.ACCEPTABLE_ORDER_PRICE;
         }
     }
 
@@ -218,8 +423,8 @@ class Algorithm {
     static class SingleBidRow implements CancelOrderPolicy {
 
         @Override
-        public boolean shouldCancelOrder(DSXOrderStatusResult order, OrderBook orderBook) {
-            return orderBook.getBids().size() < 2;
+        public boolean shouldCancelOrder(DSXOrderStatusResult order, PriceLevelBook orderBook) {
+            return orderBook.bidLevels() < 2;
         }
     }
 
@@ -235,17 +440,21 @@ class Algorithm {
         }
 
         @Override
-        public boolean shouldCancelOrder(DSXOrderStatusResult order, OrderBook orderBook) {
+        public boolean shouldCancelOrder(DSXOrderStatusResult order, PriceLevelBook orderBook) {
             logInfo(" - Average price is checking");
-            OrderBookHelper orderBookHelper = new OrderBookHelper(orderBook);
             try {
-                BigDecimal averagePrice = averagePriceRepository.getAveragePrice();
-                return !priceMonitor.isPriceAcceptable(orderBookHelper.bestBidPrice(), averagePrice);
+                BigDecimal averagePrice = getAveragePrice();
+                return !priceMonitor.isPriceAcceptable(toBigDecimal(orderBook.bestBidPrice()), averagePrice);
             } catch (Exception e) {
                 logError("\t Impossible to check average price: {}", e);
                 return false;
             }
         }
+
+        @Override
+        public double proximity(DSXOrderStatusResult order, PriceLevelBook orderBook) {
+            return priceMonitor.getLastProximity();
+        }
     }
 
     /**
@@ -260,21 +469,20 @@ class Algorithm {
         }
 
         @Override
-        public boolean shouldCancelOrder(DSXOrderStatusResult order, OrderBook orderBook) {
+        public boolean shouldCancelOrder(DSXOrderStatusResult order, PriceLevelBook orderBook) {
             logInfo(" - VolumeToMove checking");
 
-            OrderBookHelper orderBookHelper = new OrderBookHelper(orderBook);
-            BigDecimal bidVolumeAbove = orderBookHelper.bidVolumeAbove(order.getRate());
-
-            if (bidVolumeAbove == null) {
-                logInfo("\t Bids above are null");
-                return false;
-            }
+            double bidVolumeAbove = orderBook.bidVolumeAbove(order.getRate().doubleValue());
 
             logInfo("\t Bid volume above order = {}; Maximum volume above = {}",
                     bidVolumeAbove, maxVolumeAbove);
 
-            return bidVolumeAbove.compareTo(maxVolumeAbove) >= 0;
+            return bidVolumeAbove >= maxVolumeAbove.doubleValue();
+        }
+
+        @Override
+        public double proximity(DSXOrderStatusResult order, PriceLevelBook orderBook) {
+            return ratio(BigDecimal.valueOf(orderBook.bidVolumeAbove(order.getRate().doubleValue())), maxVolumeAbove);
         }
     }
 
@@ -290,11 +498,10 @@ class Algorithm {
         }
 
         @Override
-        public boolean shouldCancelOrder(DSXOrderStatusResult order, OrderBook orderBook) {
+        public boolean shouldCancelOrder(DSXOrderStatusResult order, PriceLevelBook orderBook) {
             logInfo(" - StepToMove checking");
 
-            OrderBookHelper bookHelper = new OrderBookHelper(orderBook);
-            BigDecimal bestBid = bookHelper.bestBidPrice();
+            BigDecimal bestBid = toBigDecimal(orderBook.bestBidPrice());
 
             if (bestBid == null) {
                 logInfo("\t Best bid is null");
@@ -308,6 +515,12 @@ class Algorithm {
 
             return distanceToBestBid.compareTo(maxDistanceToBestBid) > 0;
         }
+
+        @Override
+        public double proximity(DSXOrderStatusResult order, PriceLevelBook orderBook) {
+            BigDecimal bestBid = toBigDecimal(orderBook.bestBidPrice());
+            return bestBid == null ? 0 : ratio(bestBid.subtract(order.getRate()), maxDistanceToBestBid);
+        }
     }
 
     /**
@@ -322,11 +535,10 @@ class Algorithm {
         }
 
         @Override
-        public boolean shouldCancelOrder(DSXOrderStatusResult order, OrderBook orderBook) {
+        public boolean shouldCancelOrder(DSXOrderStatusResult order, PriceLevelBook orderBook) {
             logInfo(" - Sensitivity checking");
 
-            OrderBookHelper orderBookHelper = new OrderBookHelper(orderBook);
-            BigDecimal nextBidPrice = orderBookHelper.getBidPriceAfter(order.getRate());
+            BigDecimal nextBidPrice = toBigDecimal(orderBook.bidPriceAfter(order.getRate().doubleValue()));
 
             if (nextBidPrice == null) {
                 logInfo("\t There is no any bid after order");
@@ -340,5 +552,11 @@ class Algorithm {
 
             return distanceToNextOrder.compareTo(maxDistanceToNextOrder) > 0;
         }
+
+        @Override
+        public double proximity(DSXOrderStatusResult order, PriceLevelBook orderBook) {
+            BigDecimal nextBidPrice = toBigDecimal(orderBook.bidPriceAfter(order.getRate().doubleValue()));
+            return nextBidPrice == null ? 0 : ratio(order.getRate().subtract(nextBidPrice), maxDistanceToNextOrder);
+        }
     }
 }
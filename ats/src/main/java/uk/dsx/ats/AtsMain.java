@@ -8,11 +8,15 @@ import org.knowm.xchange.bitstamp.BitstampExchange;
 
 import org.knowm.xchange.dsx.service.DSXTradeService;
 import org.knowm.xchange.kraken.KrakenExchange;
+import org.knowm.xchange.service.BaseExchangeService;
 
 import uk.dsx.ats.repositories.AccountRepository;
 import uk.dsx.ats.repositories.AveragePriceRepository;
+import uk.dsx.ats.repositories.BalanceLedger;
 import uk.dsx.ats.repositories.MarketDataRepository;
 import uk.dsx.ats.repositories.TradeRepository;
+import uk.dsx.ats.risk.PreTradeRiskGate;
+import uk.dsx.ats.streaming.MarketDataStream;
 import uk.dsx.ats.utils.*;
 
 import java.nio.file.Paths;
@@ -34,19 +38,51 @@ public class AtsMain {
         Algorithm algorithm;
 
         TradeRepository tradeRepository;
+        ConfigWatcher configWatcher = new ConfigWatcher(DSXUtils.getConfigFile(), PRICE_PROPERTIES);
 
         try {
             Exchange dsxExchange = DSXUtils.createExchange();
             DSXTradeService dsxTradeService = (DSXTradeService) dsxExchange.getTradeService();
-            tradeRepository = new TradeRepository(dsxTradeService);
+            PreTradeRiskGate riskGate = new PreTradeRiskGate(configWatcher);
+            tradeRepository = new TradeRepository(dsxTradeService, riskGate);
 
-            algorithm = new Algorithm(PRICE_PROPERTIES,
-                    new MarketDataRepository(dsxExchange.getMarketDataService(), DSX_CURRENCY_PAIR),
+            BalanceLedger balanceLedger = new BalanceLedger();
+            tradeRepository.addOrderListener(balanceLedger);
+
+            Exchange watchdogExchange = DSXUtils.createExchange(PRICE_PROPERTIES.getWatchdogTimeout());
+            TradeRepository watchdogTradeRepository = new TradeRepository((DSXTradeService) watchdogExchange.getTradeService(), riskGate);
+            watchdogTradeRepository.addOrderListener(balanceLedger);
+            StaleDataWatchdog watchdog = new StaleDataWatchdog(watchdogTradeRepository, PRICE_PROPERTIES.getMaxDataAge());
+            tradeRepository.addOrderListener(watchdog);
+            watchdog.start();
+
+            MarketDataRepository marketDataRepository = new MarketDataRepository(dsxExchange.getMarketDataService(), DSX_CURRENCY_PAIR,
+                    dsxExchange.getExchangeSpecification().getSslUri(),
+                    ((BaseExchangeService) dsxExchange.getMarketDataService()).getClientConfig(),
+                    PRICE_PROPERTIES.getFxRefreshTime(), PRICE_PROPERTIES.getMaxFxRateAge());
+            AveragePriceRepository averagePriceRepository = new AveragePriceRepository(
+                    Arrays.asList(new KrakenExchange(), new BitfinexExchange(), new BitstampExchange()),
+                    EXCHANGES_CURRENCY_PAIR, PRICE_PROPERTIES.getPriceScale(),
+                    PRICE_PROPERTIES.getHedgeDelay(), PRICE_PROPERTIES.getMaxHedgesPerMinute(),
+                    PRICE_PROPERTIES.getReferenceTimeout());
+
+            MarketDataStream stream = DSXUtils.createMarketDataStream();
+            if (stream != null) {
+                marketDataRepository.attachStream(stream, dsxExchange.getExchangeSpecification().getExchangeName(),
+                        PRICE_PROPERTIES.getStreamFreshnessTime());
+                averagePriceRepository.attachStream(stream);
+                stream.start();
+            }
+
+            configWatcher.start();
+
+            algorithm = new Algorithm(configWatcher,
+                    marketDataRepository,
                     tradeRepository,
-                    new AccountRepository(dsxExchange.getAccountService(), DSX_CURRENCY_PAIR.counter),
-                    new AveragePriceRepository(
-                            Arrays.asList(new KrakenExchange(), new BitfinexExchange(), new BitstampExchange()),
-                            EXCHANGES_CURRENCY_PAIR, PRICE_PROPERTIES.getPriceScale()));
+                    new AccountRepository(dsxExchange.getAccountService(), DSX_CURRENCY_PAIR.counter,
+                            balanceLedger, 1000 * PRICE_PROPERTIES.getBalanceReconcileTime()),
+                    averagePriceRepository,
+                    watchdog);
         } catch (Exception e) {
             logErrorWithException("Failed to init DSX connector, error: {}", e);
             return;
@@ -56,7 +92,7 @@ public class AtsMain {
             logInfo("ATS started");
 
             while (!algorithm.execute()) {
-                TimeUnit.SECONDS.sleep(PRICE_PROPERTIES.getWaitingTimeForCheckingAccountFunds());
+                TimeUnit.SECONDS.sleep(configWatcher.get().getWaitingTimeForCheckingAccountFunds());
             }
         } catch (Exception e) {
             logErrorWithException("Something bad happened, error message:", e);
@@ -0,0 +1,192 @@
+package uk.dsx.ats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import uk.dsx.ats.data.PriceProperties;
+import uk.dsx.ats.data.SweepProperties;
+import uk.dsx.ats.repositories.AveragePriceRepository;
+import uk.dsx.ats.repositories.MarketDataRepository;
+import uk.dsx.ats.repositories.TradeRepository;
+import uk.dsx.ats.simulation.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static uk.dsx.ats.utils.DSXUtils.*;
+
+/**
+ * Runs the algorithm against the simulated market once for each combination of price properties from the sweep file
+ * and prints fill statistics as csv. Properties which are not swept are taken from config.json.
+ * Runs are spread over all cores, each of them has its own virtual clock, so no real time is spent on waiting.
+ */
+public class ParameterSweep {
+
+    private static final String SWEEP_FILE = "sweep.json";
+
+    public static void main(String[] args) throws Exception {
+        SweepProperties sweep = new ObjectMapper().readValue(new File(args.length > 0 ? args[0] : SWEEP_FILE), SweepProperties.class);
+
+        // every run logs each check, only errors are kept
+        Configurator.setLevel(AtsMain.logInfo.getName(), Level.ERROR);
+        Configurator.setLevel(AtsMain.logAudit.getName(), Level.ERROR);
+
+        SimulatedMarket market = sweep.getMarketFile() == null
+                ? SimulatedMarket.synthetic(DSX_CURRENCY_PAIR, sweep.getSyntheticMarket(), PRICE_PROPERTIES.getPriceScale(), PRICE_PROPERTIES.getVolumeScale())
+                : SimulatedMarket.fromCsv(Paths.get(sweep.getMarketFile()), DSX_CURRENCY_PAIR);
+
+        List<Map<String, BigDecimal>> combinations = combinations(sweep.getGrid(), sweep.getSamples(), new Random(sweep.getSeed()));
+        for (Map<String, BigDecimal> combination : combinations) {
+            // fail on unknown names and invalid values before anything is run
+            List<String> errors = withValues(PRICE_PROPERTIES, combination).validate();
+            if (!errors.isEmpty()) {
+                throw new IllegalArgumentException("Invalid combination " + combination + ": " + errors);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("%d combinations, %d ticks of market, %d threads", combinations.size(), market.size(),
+                pool.getParallelism()));
+        long start = System.currentTimeMillis();
+        List<SweepResult> results = pool.invoke(new SweepTask(sweep, market, combinations, 0, combinations.size()));
+        pool.shutdown();
+
+        System.out.println(SweepResult.HEADER);
+        results.forEach(result -> System.out.println(result.toCsv()));
+        System.out.println(String.format("Finished in %d ms", System.currentTimeMillis() - start));
+    }
+
+    static SweepResult run(SweepProperties sweep, SimulatedMarket market, Map<String, BigDecimal> combination) {
+        PriceProperties properties = withValues(PRICE_PROPERTIES, combination);
+        SimulatedClock clock = new SimulatedClock(market.getStartTime());
+        SimulatedExchange exchange = new SimulatedExchange(market, clock, DSX_CURRENCY_PAIR, sweep.getFunds(), sweep.getRequestLatency());
+        TradeRepository tradeRepository = exchange.tradeRepository();
+
+        // watchdog is never started, the simulated clock is not seen by its thread, all of them are closed after each run
+        try (StaleDataWatchdog watchdog = new StaleDataWatchdog(tradeRepository, properties.getMaxDataAge());
+             MarketDataRepository marketDataRepository = exchange.marketDataRepository();
+             AveragePriceRepository averagePriceRepository = exchange.averagePriceRepository(EXCHANGES_CURRENCY_PAIR, properties.getPriceScale())) {
+            Algorithm algorithm = new Algorithm(() -> properties,
+                    marketDataRepository,
+                    tradeRepository,
+                    exchange.accountRepository(),
+                    averagePriceRepository,
+                    watchdog,
+                    clock,
+                    exchange::getDsxRequests);
+
+            while (!algorithm.execute()) {
+                clock.sleep(1000 * properties.getWaitingTimeForCheckingAccountFunds());
+            }
+            return SweepResult.of(combination, exchange.getFilledOrders() > 0 ? "FILLED" : "NOT_ENOUGH_FUNDS", exchange);
+        } catch (SimulationFinishedException e) {
+            return SweepResult.of(combination, "MARKET_ENDED", exchange);
+        } catch (Exception e) {
+            logErrorWithException("Simulation of {} failed", e, combination);
+            return SweepResult.of(combination, "FAILED", exchange);
+        }
+    }
+
+    /**
+     * Price properties with the values replaced by the given ones, names are the ones used in config.json
+     */
+    static PriceProperties withValues(PriceProperties properties, Map<String, BigDecimal> values) {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode node = mapper.valueToTree(properties);
+        values.forEach((name, value) -> {
+            if (!node.has(name)) {
+                throw new IllegalArgumentException("Unknown price property " + name);
+            }
+            node.put(name, value);
+        });
+        try {
+            return mapper.treeToValue(node, PriceProperties.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Wrong values " + values, e);
+        }
+    }
+
+    /**
+     * Every combination of the grid values, or the given number of distinct random ones
+     */
+    static List<Map<String, BigDecimal>> combinations(Map<String, List<String>> grid, int samples, Random random) {
+        List<String> names = new ArrayList<>(grid.keySet());
+        long total = 1;
+        for (String name : names) {
+            if (grid.get(name).isEmpty()) {
+                throw new IllegalArgumentException("No values for " + name);
+            }
+            total = Math.multiplyExact(total, grid.get(name).size());
+        }
+
+        List<Long> indices = new ArrayList<>();
+        if (samples <= 0 || samples >= total) {
+            for (long index = 0; index < total; index++) {
+                indices.add(index);
+            }
+        } else {
+            Set<Long> sampled = new LinkedHashSet<>();
+            while (sampled.size() < samples) {
+                sampled.add((long) (random.nextDouble() * total));
+            }
+            indices.addAll(sampled);
+        }
+
+        List<Map<String, BigDecimal>> combinations = new ArrayList<>(indices.size());
+        for (long index : indices) {
+            // index is a mixed radix number, one digit per swept property
+            Map<String, BigDecimal> combination = new LinkedHashMap<>();
+            for (String name : names) {
+                List<String> values = grid.get(name);
+                combination.put(name, new BigDecimal(values.get((int) (index % values.size()))));
+                index /= values.size();
+            }
+            combinations.add(combination);
+        }
+        return combinations;
+    }
+
+    /**
+     * Halves the range of combinations until a single run is left
+     */
+    static class SweepTask extends RecursiveTask<List<SweepResult>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SweepProperties sweep;
+        private final SimulatedMarket market;
+        private final List<Map<String, BigDecimal>> combinations;
+        private final int from;
+        private final int to;
+
+        SweepTask(SweepProperties sweep, SimulatedMarket market, List<Map<String, BigDecimal>> combinations, int from, int to) {
+            this.sweep = sweep;
+            this.market = market;
+            this.combinations = combinations;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<SweepResult> compute() {
+            if (to - from == 1) {
+                return Collections.singletonList(run(sweep, market, combinations.get(from)));
+            }
+            if (to <= from) {
+                return Collections.emptyList();
+            }
+
+            int middle = (from + to) >>> 1;
+            SweepTask left = new SweepTask(sweep, market, combinations, from, middle);
+            left.fork();
+            List<SweepResult> results = new ArrayList<>(new SweepTask(sweep, market, combinations, middle, to).compute());
+            results.addAll(0, left.join());
+            return results;
+        }
+    }
+}
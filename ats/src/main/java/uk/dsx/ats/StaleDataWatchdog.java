@@ -0,0 +1,145 @@
+package uk.dsx.ats;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dsx.dto.trade.DSXOrderStatusResult;
+import uk.dsx.ats.repositories.TradeRepository;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static uk.dsx.ats.utils.DSXUtils.*;
+
+/**
+ * Cancels resting orders when any input of the algorithm has not been updated for too long,
+ * e.g. the trading thread is stuck in a request or a retry sleep. Runs on its own thread and cancels over its own
+ * connection, so the reaction time does not depend on the trading thread. The connection is warmed up on start and
+ * again every few seconds while orders are resting, as idle keep-alive connections are closed by the server.
+ */
+class StaleDataWatchdog implements TradeRepository.OrderListener, AutoCloseable {
+
+    enum Input {
+        ORDER_BOOK,
+        REFERENCE_PRICE,
+        EXCHANGE_RATE,
+        ORDER_STATUS
+    }
+
+    private static final long CHECK_PERIOD_MILLIS = 500L;
+    private static final long WARM_UP_PERIOD_MILLIS = 5000L;
+
+    private final TradeRepository cancelRepository;
+    private final long maxDataAge;
+    private final long warmUpPeriod;
+    private final AtomicLongArray lastUpdates = new AtomicLongArray(Input.values().length);
+    private final Set<String> restingOrders = ConcurrentHashMap.newKeySet();
+    // accessed from start() and then from the scheduler thread only
+    private long lastWarmUp;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stale-data-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param cancelRepository repository on a dedicated connection, used only by the watchdog
+     * @param maxDataAge       maximum age of any input in milliseconds while there are resting orders
+     */
+    StaleDataWatchdog(TradeRepository cancelRepository, long maxDataAge) {
+        this(cancelRepository, maxDataAge, WARM_UP_PERIOD_MILLIS);
+    }
+
+    /**
+     * @param warmUpPeriod how often the connection is warmed up while there are resting orders, in milliseconds
+     */
+    StaleDataWatchdog(TradeRepository cancelRepository, long maxDataAge, long warmUpPeriod) {
+        this.cancelRepository = cancelRepository;
+        this.maxDataAge = maxDataAge;
+        this.warmUpPeriod = warmUpPeriod;
+        this.cancelRepository.addOrderListener(this);
+    }
+
+    void start() {
+        // connection, TLS session and nonce are set up now instead of at the moment of cancelling
+        warmUp();
+        scheduler.scheduleWithFixedDelay(this::check, CHECK_PERIOD_MILLIS, CHECK_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void touch(Input input) {
+        lastUpdates.set(input.ordinal(), System.currentTimeMillis());
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public void onOrderPlaced(String orderId, CurrencyPair pair, BigDecimal volume, BigDecimal price) {
+        restingOrders.add(orderId);
+        touch(Input.ORDER_STATUS);
+    }
+
+    @Override
+    public void onOrderStatus(String orderId, DSXOrderStatusResult status) {
+        // any status except active (0) means the order left the book
+        if (status.getStatus() != null && status.getStatus() != 0) {
+            restingOrders.remove(orderId);
+        }
+    }
+
+    @Override
+    public void onOrderCancelled(String orderId) {
+        restingOrders.remove(orderId);
+    }
+
+    @Override
+    public void onAllOrdersCancelled() {
+        restingOrders.clear();
+    }
+
+    private void check() {
+        if (restingOrders.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Input input : Input.values()) {
+            long age = now - lastUpdates.get(input.ordinal());
+            if (age > maxDataAge) {
+                logError("{} was updated {} ms ago (limit {} ms), cancelling resting orders {}",
+                        input, age, maxDataAge, restingOrders);
+                cancelRestingOrders();
+                return;
+            }
+        }
+
+        // after the checks, so a slow warm up never delays a cancel
+        if (now - lastWarmUp >= warmUpPeriod) {
+            warmUp();
+        }
+    }
+
+    private void warmUp() {
+        lastWarmUp = System.currentTimeMillis();
+        try {
+            cancelRepository.warmUp();
+        } catch (Exception e) {
+            logErrorWithException("Stale data watchdog connection warm up failed", e);
+        }
+    }
+
+    private void cancelRestingOrders() {
+        try {
+            cancelRepository.cancelAllOrdersOnce();
+            logInfo("Resting orders were cancelled by stale data watchdog");
+        } catch (Exception e) {
+            // orders are still resting, so the next check tries again
+            logErrorWithException("Stale data watchdog failed to cancel orders", e);
+        }
+    }
+}
@@ -15,4 +15,5 @@ public class ExchangeProperties {
     String url;
     String secretKey;
     String apiKey;
+    String streamUrl;
 }
@@ -1,16 +1,26 @@
 package uk.dsx.ats.data;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * @author Mikhail Wall on 6/27/17.
  */
 
-@Data
+@Getter
+@ToString
+@EqualsAndHashCode
 @JsonIgnoreProperties(ignoreUnknown = true)
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
 public class PriceProperties {
 
     public static final BigDecimal MIN_ORDER_SIZE = new BigDecimal("0.001");
@@ -30,6 +40,22 @@ public class PriceProperties {
     public static final int DEFAULT_NEW_ORDER_TIME = 300;
     public static final BigDecimal DEFAULT_SENSITIVITY = new BigDecimal("5");
     public static final BigDecimal DEFAULT_MAX_PRICE = new BigDecimal("20000");
+    public static final long DEFAULT_BALANCE_RECONCILE_TIME = 60L;
+    public static final long DEFAULT_STREAM_FRESHNESS_TIME = 5000L;
+    public static final int DEFAULT_REQUESTS_PER_MINUTE = 60;
+    public static final BigDecimal DEFAULT_MAX_INTERVAL_MULTIPLIER = new BigDecimal("4");
+    public static final BigDecimal DEFAULT_VOLATILITY_THRESHOLD = new BigDecimal("0.002");
+    public static final long DEFAULT_MAX_DATA_AGE = 30000L;
+    public static final int DEFAULT_WATCHDOG_TIMEOUT = 5000;
+    public static final BigDecimal DEFAULT_MAX_ORDER_SIZE = new BigDecimal("10");
+    public static final int DEFAULT_MAX_ORDERS_PER_SECOND = 2;
+    public static final BigDecimal DEFAULT_MAX_NOTIONAL = new BigDecimal("100000");
+    public static final long DEFAULT_NOTIONAL_WINDOW_TIME = 60L;
+    public static final long DEFAULT_HEDGE_DELAY = 1000L;
+    public static final int DEFAULT_MAX_HEDGES_PER_MINUTE = 6;
+    public static final long DEFAULT_REFERENCE_TIMEOUT = 5000L;
+    public static final long DEFAULT_FX_REFRESH_TIME = 10000L;
+    public static final long DEFAULT_MAX_FX_RATE_AGE = 60000L;
 
     BigDecimal minOrderSize = MIN_ORDER_SIZE;
     String dsxCurrencyPair = DEFAULT_DSX_CURRENCY_PAIR;
@@ -47,5 +73,122 @@ public class PriceProperties {
     long waitingTimeForOrderCheck = DEFAULT_WAITING_TIME_FOR_ORDER_CHECK;
     long waitingTimeForCheckingAccountFunds = DEFAULT_NEW_ORDER_TIME;
     BigDecimal sensitivity = DEFAULT_SENSITIVITY;
+    // config.json names it "pmax"
+    @JsonAlias("pmax")
     BigDecimal maxPrice = DEFAULT_MAX_PRICE;
+    long balanceReconcileTime = DEFAULT_BALANCE_RECONCILE_TIME;
+    long streamFreshnessTime = DEFAULT_STREAM_FRESHNESS_TIME;
+    int requestsPerMinute = DEFAULT_REQUESTS_PER_MINUTE;
+    BigDecimal maxIntervalMultiplier = DEFAULT_MAX_INTERVAL_MULTIPLIER;
+    BigDecimal volatilityThreshold = DEFAULT_VOLATILITY_THRESHOLD;
+    long maxDataAge = DEFAULT_MAX_DATA_AGE;
+    int watchdogTimeout = DEFAULT_WATCHDOG_TIMEOUT;
+    BigDecimal maxOrderSize = DEFAULT_MAX_ORDER_SIZE;
+    int maxOrdersPerSecond = DEFAULT_MAX_ORDERS_PER_SECOND;
+    BigDecimal maxNotional = DEFAULT_MAX_NOTIONAL;
+    long notionalWindowTime = DEFAULT_NOTIONAL_WINDOW_TIME;
+    long hedgeDelay = DEFAULT_HEDGE_DELAY;
+    int maxHedgesPerMinute = DEFAULT_MAX_HEDGES_PER_MINUTE;
+    long referenceTimeout = DEFAULT_REFERENCE_TIMEOUT;
+    long fxRefreshTime = DEFAULT_FX_REFRESH_TIME;
+    long maxFxRateAge = DEFAULT_MAX_FX_RATE_AGE;
+
+    /**
+     * @return problems which make the properties unusable, empty if there are none
+     */
+    public List<String> validate() {
+        List<String> errors = new ArrayList<>();
+        positive(errors, "minOrderSize", minOrderSize);
+        positive(errors, "pricePercentage", pricePercentage);
+        positive(errors, "fxPercentage", fxPercentage);
+        notNegative(errors, "priceAddition", priceAddition);
+        notNegative(errors, "stepToMove", stepToMove);
+        notNegative(errors, "volumeToMove", volumeToMove);
+        notNegative(errors, "sensitivity", sensitivity);
+        positive(errors, "maxPrice", maxPrice);
+        positive(errors, "maxIntervalMultiplier", maxIntervalMultiplier);
+        notNegative(errors, "volatilityThreshold", volatilityThreshold);
+        positive(errors, "averagePriceUpdateTime", averagePriceUpdateTime);
+        positive(errors, "timestampForPriceUpdate", timestampForPriceUpdate);
+        positive(errors, "waitingTimeForOrderCheck", waitingTimeForOrderCheck);
+        notNegative(errors, "waitingTimeForCheckingAccountFunds", waitingTimeForCheckingAccountFunds);
+        notNegative(errors, "priceScale", priceScale);
+        notNegative(errors, "volumeScale", volumeScale);
+        positive(errors, "balanceReconcileTime", balanceReconcileTime);
+        positive(errors, "streamFreshnessTime", streamFreshnessTime);
+        positive(errors, "requestsPerMinute", requestsPerMinute);
+        positive(errors, "maxDataAge", maxDataAge);
+        positive(errors, "watchdogTimeout", watchdogTimeout);
+        positive(errors, "maxOrderSize", maxOrderSize);
+        positive(errors, "maxOrdersPerSecond", maxOrdersPerSecond);
+        positive(errors, "maxNotional", maxNotional);
+        positive(errors, "notionalWindowTime", notionalWindowTime);
+        positive(errors, "hedgeDelay", hedgeDelay);
+        notNegative(errors, "maxHedgesPerMinute", maxHedgesPerMinute);
+        positive(errors, "referenceTimeout", referenceTimeout);
+        positive(errors, "fxRefreshTime", fxRefreshTime);
+        positive(errors, "maxFxRateAge", maxFxRateAge);
+
+        // order status is requested at most that rarely, a shorter maxDataAge would cancel orders which are checked in time
+        if (maxIntervalMultiplier != null && maxIntervalMultiplier.signum() > 0) {
+            BigDecimal maxOrderCheckInterval = maxIntervalMultiplier.multiply(BigDecimal.valueOf(waitingTimeForOrderCheck * 1000));
+            if (BigDecimal.valueOf(maxDataAge).compareTo(maxOrderCheckInterval) <= 0) {
+                errors.add("maxDataAge should be bigger than waitingTimeForOrderCheck * 1000 * maxIntervalMultiplier ("
+                        + maxOrderCheckInterval.stripTrailingZeros().toPlainString() + " ms), got " + maxDataAge);
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * @return names of properties which differ from the other ones and are applied only on start
+     */
+    public List<String> changesRequiringRestart(PriceProperties other) {
+        List<String> changes = new ArrayList<>();
+        changed(changes, "dsxCurrencyPair", dsxCurrencyPair, other.dsxCurrencyPair);
+        changed(changes, "exchangesCurrencyPair", exchangesCurrencyPair, other.exchangesCurrencyPair);
+        changed(changes, "dsxAccountType", dsxAccountType, other.dsxAccountType);
+        changed(changes, "priceScale", priceScale, other.priceScale);
+        changed(changes, "balanceReconcileTime", balanceReconcileTime, other.balanceReconcileTime);
+        changed(changes, "streamFreshnessTime", streamFreshnessTime, other.streamFreshnessTime);
+        changed(changes, "maxDataAge", maxDataAge, other.maxDataAge);
+        changed(changes, "watchdogTimeout", watchdogTimeout, other.watchdogTimeout);
+        changed(changes, "notionalWindowTime", notionalWindowTime, other.notionalWindowTime);
+        changed(changes, "hedgeDelay", hedgeDelay, other.hedgeDelay);
+        changed(changes, "maxHedgesPerMinute", maxHedgesPerMinute, other.maxHedgesPerMinute);
+        changed(changes, "referenceTimeout", referenceTimeout, other.referenceTimeout);
+        changed(changes, "fxRefreshTime", fxRefreshTime, other.fxRefreshTime);
+        changed(changes, "maxFxRateAge", maxFxRateAge, other.maxFxRateAge);
+        return changes;
+    }
+
+    private static void positive(List<String> errors, String name, BigDecimal value) {
+        if (value == null || value.signum() <= 0) {
+            errors.add(name + " should be positive, got " + value);
+        }
+    }
+
+    private static void notNegative(List<String> errors, String name, BigDecimal value) {
+        if (value == null || value.signum() < 0) {
+            errors.add(name + " should not be negative, got " + value);
+        }
+    }
+
+    private static void positive(List<String> errors, String name, long value) {
+        if (value <= 0) {
+            errors.add(name + " should be positive, got " + value);
+        }
+    }
+
+    private static void notNegative(List<String> errors, String name, long value) {
+        if (value < 0) {
+            errors.add(name + " should not be negative, got " + value);
+        }
+    }
+
+    private static void changed(List<String> changes, String name, Object value, Object otherValue) {
+        if (!Objects.equals(value, otherValue)) {
+            changes.add(name);
+        }
+    }
 }
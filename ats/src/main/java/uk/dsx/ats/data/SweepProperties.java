@@ -0,0 +1,35 @@
+package uk.dsx.ats.data;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parameter sweep settings: price property values to try and the market to run the algorithm against
+ */
+@Getter
+@ToString
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class SweepProperties {
+
+    public static final BigDecimal DEFAULT_FUNDS = new BigDecimal("10000");
+    public static final long DEFAULT_REQUEST_LATENCY = 100L;
+    public static final long DEFAULT_SEED = 1L;
+
+    // recorded market, the synthetic one is generated if it's not set
+    String marketFile;
+    SyntheticMarketProperties syntheticMarket = new SyntheticMarketProperties();
+    BigDecimal funds = DEFAULT_FUNDS;
+    long requestLatency = DEFAULT_REQUEST_LATENCY;
+    // 0 - every combination of the grid, otherwise number of randomly chosen combinations
+    int samples;
+    long seed = DEFAULT_SEED;
+    Map<String, List<String>> grid = Collections.emptyMap();
+}
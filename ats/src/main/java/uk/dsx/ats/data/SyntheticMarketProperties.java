@@ -0,0 +1,51 @@
+package uk.dsx.ats.data;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+
+/**
+ * Random walk of DSX best bid with reference price moving around it by a mean reverting premium
+ */
+@Getter
+@ToString
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class SyntheticMarketProperties {
+
+    public static final long DEFAULT_SEED = 1L;
+    public static final int DEFAULT_TICKS = 86400;
+    public static final long DEFAULT_TICK_TIME = 1000L;
+    public static final BigDecimal DEFAULT_START_PRICE = new BigDecimal("7000");
+    public static final BigDecimal DEFAULT_EXCHANGE_RATE = new BigDecimal("1.15");
+    public static final BigDecimal DEFAULT_VOLATILITY = new BigDecimal("0.0003");
+    public static final int DEFAULT_LEVELS = 10;
+    public static final BigDecimal DEFAULT_LEVEL_STEP = new BigDecimal("0.5");
+    public static final BigDecimal DEFAULT_LEVEL_VOLUME = new BigDecimal("0.5");
+    public static final BigDecimal DEFAULT_PREMIUM = new BigDecimal("0.005");
+    public static final BigDecimal DEFAULT_PREMIUM_VOLATILITY = new BigDecimal("0.001");
+    public static final BigDecimal DEFAULT_PREMIUM_REVERSION = new BigDecimal("0.01");
+    public static final BigDecimal DEFAULT_TRADE_PROBABILITY = new BigDecimal("0.1");
+    public static final BigDecimal DEFAULT_TRADE_VOLUME = new BigDecimal("0.5");
+
+    long seed = DEFAULT_SEED;
+    int ticks = DEFAULT_TICKS;
+    long tickTime = DEFAULT_TICK_TIME;
+    BigDecimal startPrice = DEFAULT_START_PRICE;
+    BigDecimal exchangeRate = DEFAULT_EXCHANGE_RATE;
+    // relative move of best bid per tick
+    BigDecimal volatility = DEFAULT_VOLATILITY;
+    int levels = DEFAULT_LEVELS;
+    BigDecimal levelStep = DEFAULT_LEVEL_STEP;
+    BigDecimal levelVolume = DEFAULT_LEVEL_VOLUME;
+    // reference price / (best bid * exchange rate) - 1 on average
+    BigDecimal premium = DEFAULT_PREMIUM;
+    BigDecimal premiumVolatility = DEFAULT_PREMIUM_VOLATILITY;
+    // part of the premium deviation removed each tick
+    BigDecimal premiumReversion = DEFAULT_PREMIUM_REVERSION;
+    BigDecimal tradeProbability = DEFAULT_TRADE_PROBABILITY;
+    BigDecimal tradeVolume = DEFAULT_TRADE_VOLUME;
+}
@@ -0,0 +1,30 @@
+package uk.dsx.ats.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Verdict of one CancelOrderPolicy for the placed order
+ */
+@Name("uk.dsx.ats.CancelPolicy")
+@Label("Cancel Policy Verdict")
+@Category({"ATS", "Algorithm"})
+@Description("Check of the placed order by a cancel order policy")
+public class CancelPolicyEvent extends Event {
+
+    @Label("Policy")
+    public String policy;
+
+    @Label("Order Price")
+    public String orderPrice;
+
+    @Label("Cancel")
+    public boolean cancel;
+
+    @Label("Proximity")
+    @Description("How close the order was to be cancelled, 1 is the limit")
+    public double proximity;
+}
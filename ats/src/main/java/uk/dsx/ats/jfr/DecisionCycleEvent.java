@@ -0,0 +1,30 @@
+package uk.dsx.ats.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One run of Algorithm.execute(): from cancelling old orders to the placed order being filled or replaced
+ */
+@Name("uk.dsx.ats.DecisionCycle")
+@Label("Decision Cycle")
+@Category({"ATS", "Algorithm"})
+@Description("One run of the trading algorithm")
+public class DecisionCycleEvent extends Event {
+
+    @Label("Order Id")
+    public String orderId;
+
+    @Label("Order Price")
+    public String orderPrice;
+
+    @Label("Order Volume")
+    public String orderVolume;
+
+    @Label("Result")
+    @Description("FILLED, REPLACED, CANCELLED, REJECTED, NOT_ENOUGH_FUNDS or FAILED")
+    public String result;
+}
@@ -0,0 +1,30 @@
+package uk.dsx.ats.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Single attempt of a repository request made through DSXUtils.unlimitedRepeatableRequest or DSXUtils.singleRequest
+ */
+@Name("uk.dsx.ats.RestCall")
+@Label("REST Call")
+@Category({"ATS", "Network"})
+@Description("Single attempt of a request to an exchange")
+public class RestCallEvent extends Event {
+
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("Attempt")
+    public int attempt;
+
+    @Label("Outcome")
+    @Description("SUCCESS, RETRY or ERROR")
+    public String outcome;
+
+    @Label("Error")
+    public String error;
+}
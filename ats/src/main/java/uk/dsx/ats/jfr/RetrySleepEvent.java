@@ -0,0 +1,26 @@
+package uk.dsx.ats.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Back-off sleep of DSXUtils.unlimitedRepeatableRequest before the next attempt
+ */
+@Name("uk.dsx.ats.RetrySleep")
+@Label("Retry Sleep")
+@Category({"ATS", "Network"})
+@Description("Back-off sleep before repeating a failed request")
+public class RetrySleepEvent extends Event {
+
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("Reason")
+    public String reason;
+
+    @Label("Planned Seconds")
+    public int plannedSeconds;
+}
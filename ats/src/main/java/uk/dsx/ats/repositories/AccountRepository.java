@@ -2,6 +2,7 @@ package uk.dsx.ats.repositories;
 
 import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.dto.account.Balance;
+import org.knowm.xchange.dto.account.Wallet;
 import org.knowm.xchange.service.account.AccountService;
 import uk.dsx.ats.utils.DSXUtils;
 
@@ -9,14 +10,29 @@ public class AccountRepository {
 
     private final AccountService accountService;
     private final Currency currency;
+    private final BalanceLedger ledger;
+    private final long reconcileDelay;
 
-    public AccountRepository(AccountService accountService, Currency currency) {
+    public AccountRepository(AccountService accountService, Currency currency, BalanceLedger ledger, long reconcileDelay) {
         this.accountService = accountService;
         this.currency = currency;
+        this.ledger = ledger;
+        this.reconcileDelay = reconcileDelay;
     }
 
+    /**
+     * Balance from the local ledger, the wallet is requested only when the ledger is due for reconciliation
+     */
     public Balance getBalance() throws Exception {
-        return DSXUtils.unlimitedRepeatableRequest("getFunds",
-                () -> accountService.getAccountInfo().getWallet().getBalance(currency));
+        if (ledger.needReconcile(reconcileDelay)) {
+            reconcile();
+        }
+        return ledger.getBalance(currency);
+    }
+
+    public void reconcile() throws Exception {
+        Wallet wallet = DSXUtils.unlimitedRepeatableRequest("getFunds",
+                () -> accountService.getAccountInfo().getWallet());
+        ledger.reconcile(wallet);
     }
 }
@@ -4,44 +4,122 @@ import org.knowm.xchange.Exchange;
 import org.knowm.xchange.ExchangeFactory;
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dto.trade.LimitOrder;
-import uk.dsx.ats.AtsMain;
+import uk.dsx.ats.data.PriceProperties;
+import uk.dsx.ats.streaming.MarketDataStream;
 import uk.dsx.ats.utils.DSXUtils;
+import uk.dsx.ats.utils.LatencyStats;
+import uk.dsx.ats.utils.SlidingWindowCounter;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-public class AveragePriceRepository {
+import static uk.dsx.ats.utils.DSXUtils.logError;
+import static uk.dsx.ats.utils.DSXUtils.logInfo;
+
+/**
+ * Average of best bids on reference exchanges. Exchanges are requested in parallel, a request which is not answered
+ * by the p95 latency of its exchange is hedged: sent once more while the exchange hedge budget allows, and the first
+ * answer is used. Above the budget nothing more is sent. An exchange which doesn't answer in the reference timeout
+ * is averaged with its last price.
+ */
+public class AveragePriceRepository implements AutoCloseable {
+
+    // latencies of that many last order book requests are kept for each exchange
+    private static final int LATENCY_SAMPLES = 200;
+    // hedgeDelay is used until the percentile is taken from enough requests
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final long HEDGE_BUDGET_WINDOW = 60_000L;
+    private static final int HEDGE_BUDGET_BUCKETS = 12;
 
     private final List<ExchangeWrapper> exchanges;
     private final CurrencyPair pair;
     private final int scale;
+    private final long hedgeDelay;
+    private final int maxHedgesPerMinute;
+    private final long referenceTimeout;
+
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool(daemonThreads("reference-price"));
+    private final ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("reference-price-hedge"));
 
     public AveragePriceRepository(List<Exchange> exchanges, CurrencyPair pair, int scale) {
+        this(exchanges, pair, scale, PriceProperties.DEFAULT_HEDGE_DELAY, PriceProperties.DEFAULT_MAX_HEDGES_PER_MINUTE,
+                PriceProperties.DEFAULT_REFERENCE_TIMEOUT);
+    }
+
+    /**
+     * @param hedgeDelay         time in milliseconds to wait before hedging while there is no latency statistics yet
+     * @param maxHedgesPerMinute hedges of order book requests per exchange, nothing more is sent above that
+     * @param referenceTimeout   time in milliseconds to wait for all exchanges, the last price is used for late ones
+     */
+    public AveragePriceRepository(List<Exchange> exchanges, CurrencyPair pair, int scale, long hedgeDelay, int maxHedgesPerMinute,
+                                  long referenceTimeout) {
         this.exchanges = exchanges.stream()
                 .map(this::initializeExchange)
                 .map(ExchangeWrapper::new)
                 .collect(Collectors.toList());
         this.pair = pair;
         this.scale = scale;
+        this.hedgeDelay = hedgeDelay;
+        this.maxHedgesPerMinute = maxHedgesPerMinute;
+        this.referenceTimeout = referenceTimeout;
+    }
+
+    /**
+     * Reference prices pushed by the stream keep exchanges updated, so they are requested over REST only when the stream is silent
+     */
+    public void attachStream(MarketDataStream stream) {
+        for (ExchangeWrapper wrapper : exchanges) {
+            stream.subscribe(wrapper.getName(), pair, new MarketDataStream.Listener() {
+                @Override
+                public void onTicker(String exchange, CurrencyPair pair, BigDecimal last, BigDecimal bid, BigDecimal ask) {
+                    if (bid != null) {
+                        wrapper.setLastPrice(bid);
+                    }
+                }
+            });
+        }
     }
 
     public BigDecimal getAveragePrice() throws Exception {
         BigDecimal sum = BigDecimal.ZERO;
         BigDecimal count = BigDecimal.ZERO;
 
+        Map<ExchangeWrapper, CompletableFuture<BigDecimal>> requests = new LinkedHashMap<>();
         for (ExchangeWrapper exchange : exchanges) {
             if (exchange.getNeedUpdate()) {
-                Optional<LimitOrder> order = exchange.exchange.getMarketDataService().getOrderBook(pair).getBids().stream().findFirst();
-                if (order.isPresent()) {
-                    exchange.setLastPrice(order.get().getLimitPrice());
-                } else {
-                    exchange.setLastPrice(null);
+                requests.put(exchange, requestBestBid(exchange));
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + referenceTimeout;
+        Exception error = null;
+        for (Map.Entry<ExchangeWrapper, CompletableFuture<BigDecimal>> request : requests.entrySet()) {
+            ExchangeWrapper exchange = request.getKey();
+            try {
+                exchange.setLastPrice(request.getValue().get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                logError("\t No answer from {} in {} ms, last price {} is used", exchange.getName(), referenceTimeout, exchange.getLastPrice());
+                // a late answer is still taken, so the next call doesn't request the exchange again right away
+                request.getValue().thenAccept(exchange::setLastPrice);
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
                 }
             }
+        }
+        if (error != null) {
+            throw error;
+        }
 
+        for (ExchangeWrapper exchange : exchanges) {
             if (exchange.getLastPrice() != null) {
                 sum = sum.add(exchange.getLastPrice());
                 count = count.add(BigDecimal.ONE);
@@ -55,16 +133,81 @@ public class AveragePriceRepository {
         }
     }
 
+    /**
+     * Stops the request and hedge threads, requests still running are interrupted
+     */
+    @Override
+    public void close() {
+        hedgeScheduler.shutdownNow();
+        requestExecutor.shutdownNow();
+    }
+
     private Exchange initializeExchange(Exchange prototype) {
         return ExchangeFactory.INSTANCE.createExchange(prototype.getClass().getName());
     }
 
-    static class ExchangeWrapper {
+    /**
+     * Completes with the first answer of the order book request or its hedge, exceptionally if all of the sent ones failed.
+     * When the hedge budget is spent, only the first request is waited for.
+     */
+    private CompletableFuture<BigDecimal> requestBestBid(ExchangeWrapper exchange) {
+        CompletableFuture<BigDecimal> result = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        send(exchange::getOrderBookBid, exchange.orderBookLatency, result, running);
+
+        long delay = exchange.getHedgeDelay(hedgeDelay);
+        ScheduledFuture<?> hedge = hedgeScheduler.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (!exchange.tryHedge(maxHedgesPerMinute)) {
+                logInfo("\t No answer from {} in {} ms, hedge budget is spent", exchange.getName(), delay);
+                return;
+            }
+            // counted before the send, so a failure of the first request doesn't complete the result meanwhile
+            if (running.getAndIncrement() == 0) {
+                return;
+            }
+            logInfo("\t No answer from {} in {} ms, order book is requested once more", exchange.getName(), delay);
+            send(exchange::getOrderBookBid, exchange.orderBookLatency, result, running);
+        }, delay, TimeUnit.MILLISECONDS);
+        result.whenComplete((price, e) -> hedge.cancel(false));
+        return result;
+    }
+
+    private void send(Callable<BigDecimal> request, LatencyStats latency, CompletableFuture<BigDecimal> result, AtomicInteger running) {
+        requestExecutor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                BigDecimal price = request.call();
+                // answers which came after the first one are recorded too, otherwise slow answers would be never seen
+                latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                result.complete(price);
+            } catch (Exception e) {
+                if (running.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    class ExchangeWrapper {
 
         final Exchange exchange;
+        final LatencyStats orderBookLatency = new LatencyStats(LATENCY_SAMPLES);
+        final SlidingWindowCounter hedges = new SlidingWindowCounter(HEDGE_BUDGET_WINDOW, HEDGE_BUDGET_BUCKETS);
 
-        private BigDecimal lastPrice;
-        private long lastUpdate;
+        private volatile BigDecimal lastPrice;
+        private volatile long lastUpdate;
         private long updateDelay;
 
         ExchangeWrapper(Exchange exchange) {
@@ -75,6 +218,32 @@ public class AveragePriceRepository {
                     exchange.getDefaultExchangeSpecification().getExchangeName());
         }
 
+        String getName() {
+            return exchange.getDefaultExchangeSpecification().getExchangeName();
+        }
+
+        BigDecimal getOrderBookBid() throws Exception {
+            Optional<LimitOrder> order = DSXUtils.singleRequest(getName() + ".getOrderBook",
+                    () -> exchange.getMarketDataService().getOrderBook(pair)).getBids().stream().findFirst();
+            return order.map(LimitOrder::getLimitPrice).orElse(null);
+        }
+
+        long getHedgeDelay(long defaultDelay) {
+            return orderBookLatency.size() < MIN_LATENCY_SAMPLES ? defaultDelay : orderBookLatency.percentile(HEDGE_PERCENTILE);
+        }
+
+        /**
+         * Takes a hedge from the budget of the exchange
+         */
+        boolean tryHedge(int maxHedgesPerMinute) {
+            long now = System.currentTimeMillis();
+            if (hedges.add(now, 1) > maxHedgesPerMinute) {
+                hedges.add(now, -1);
+                return false;
+            }
+            return true;
+        }
+
         boolean getNeedUpdate() {
             return lastUpdate + updateDelay < System.currentTimeMillis();
         }
@@ -0,0 +1,175 @@
+package uk.dsx.ats.repositories;
+
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dsx.dto.trade.DSXOrderStatusResult;
+import org.knowm.xchange.dto.account.Balance;
+import org.knowm.xchange.dto.account.Wallet;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static uk.dsx.ats.utils.DSXUtils.logInfo;
+
+/**
+ * Local projection of available and reserved funds, moved by our own order events between exchange reconciliations.
+ * Fees and execution at a better price are not projected, they are picked up by the next reconciliation.
+ * Cancelling a resting order makes the ledger due for reconciliation, as the order could be filled after its last status.
+ */
+public class BalanceLedger implements TradeRepository.OrderListener {
+
+    private final Map<Currency, Funds> funds = new HashMap<>();
+    private final Map<String, Reserve> reserves = new HashMap<>();
+
+    private long lastReconcile = 0L;
+    private boolean outOfSync = true;
+
+    public synchronized boolean needReconcile(long reconcileDelay) {
+        return outOfSync || lastReconcile + reconcileDelay < System.currentTimeMillis();
+    }
+
+    public synchronized void markOutOfSync() {
+        outOfSync = true;
+    }
+
+    public synchronized void reconcile(Wallet wallet) {
+        for (Balance balance : wallet.getBalances().values()) {
+            Funds current = funds.get(balance.getCurrency());
+            if (current != null && !current.matches(balance)) {
+                logInfo("Local balance {} differs from exchange {}", current.toBalance(balance.getCurrency()), balance);
+            }
+            funds.put(balance.getCurrency(), new Funds(balance.getAvailable(), balance.getFrozen()));
+        }
+        lastReconcile = System.currentTimeMillis();
+        outOfSync = false;
+    }
+
+    public synchronized Balance getBalance(Currency currency) {
+        Funds current = funds.get(currency);
+        return current == null ? new Balance(currency, BigDecimal.ZERO) : current.toBalance(currency);
+    }
+
+    @Override
+    public synchronized void onOrderPlaced(String orderId, CurrencyPair pair, BigDecimal volume, BigDecimal price) {
+        Reserve reserve = new Reserve(pair, price, volume);
+        reserves.put(orderId, reserve);
+        funds(pair.counter).reserve(volume.multiply(price));
+        checkConsistency(pair.counter);
+    }
+
+    @Override
+    public synchronized void onOrderStatus(String orderId, DSXOrderStatusResult status) {
+        Reserve reserve = reserves.get(orderId);
+        if (reserve == null || status.getRemainingVolume() == null) {
+            return;
+        }
+
+        BigDecimal filled = reserve.remainingVolume.subtract(status.getRemainingVolume());
+        if (filled.signum() > 0) {
+            funds(reserve.pair.counter).spend(filled.multiply(reserve.price));
+            funds(reserve.pair.base).add(filled);
+            reserve.remainingVolume = status.getRemainingVolume();
+        } else if (filled.signum() < 0) {
+            outOfSync = true;
+        }
+
+        // any status except active (0) means the order left the book
+        if (status.getStatus() != null && status.getStatus() != 0) {
+            release(orderId);
+        }
+    }
+
+    /**
+     * Volume filled after the last seen status is unknown, so the ledger is reconciled before it's used again
+     */
+    @Override
+    public synchronized void onOrderCancelled(String orderId) {
+        if (release(orderId)) {
+            markOutOfSync();
+        }
+    }
+
+    @Override
+    public synchronized void onAllOrdersCancelled() {
+        boolean released = false;
+        for (String orderId : reserves.keySet().toArray(new String[0])) {
+            released |= release(orderId);
+        }
+        if (released) {
+            markOutOfSync();
+        }
+    }
+
+    private boolean release(String orderId) {
+        Reserve reserve = reserves.remove(orderId);
+        if (reserve == null) {
+            return false;
+        }
+        funds(reserve.pair.counter).release(reserve.remainingVolume.multiply(reserve.price));
+        checkConsistency(reserve.pair.counter);
+        return true;
+    }
+
+    private void checkConsistency(Currency currency) {
+        Funds current = funds.get(currency);
+        if (current.available.signum() < 0 || current.reserved.signum() < 0) {
+            outOfSync = true;
+        }
+    }
+
+    private Funds funds(Currency currency) {
+        return funds.computeIfAbsent(currency, c -> new Funds(BigDecimal.ZERO, BigDecimal.ZERO));
+    }
+
+    private static class Funds {
+
+        private BigDecimal available;
+        private BigDecimal reserved;
+
+        Funds(BigDecimal available, BigDecimal reserved) {
+            this.available = available == null ? BigDecimal.ZERO : available;
+            this.reserved = reserved == null ? BigDecimal.ZERO : reserved;
+        }
+
+        void reserve(BigDecimal amount) {
+            available = available.subtract(amount);
+            reserved = reserved.add(amount);
+        }
+
+        void release(BigDecimal amount) {
+            available = available.add(amount);
+            reserved = reserved.subtract(amount);
+        }
+
+        void spend(BigDecimal amount) {
+            reserved = reserved.subtract(amount);
+        }
+
+        void add(BigDecimal amount) {
+            available = available.add(amount);
+        }
+
+        boolean matches(Balance balance) {
+            return balance.getAvailable() != null && available.compareTo(balance.getAvailable()) == 0;
+        }
+
+        Balance toBalance(Currency currency) {
+            return new Balance(currency, available.add(reserved), available, reserved);
+        }
+    }
+
+    private static class Reserve {
+
+        final CurrencyPair pair;
+        final BigDecimal price;
+
+        private BigDecimal remainingVolume;
+
+        Reserve(CurrencyPair pair, BigDecimal price, BigDecimal volume) {
+            this.pair = pair;
+            this.price = price;
+            this.remainingVolume = volume;
+        }
+    }
+}
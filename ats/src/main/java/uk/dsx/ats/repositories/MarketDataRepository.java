@@ -1,67 +1,316 @@
 package uk.dsx.ats.repositories;
 
+import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.currency.CurrencyPair;
-import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.Order;
 import org.knowm.xchange.service.marketdata.MarketDataService;
+import si.mazi.rescu.ClientConfig;
+import uk.dsx.ats.data.PriceProperties;
+import uk.dsx.ats.streaming.MarketDataStream;
 import uk.dsx.ats.utils.DSXUtils;
+import uk.dsx.ats.utils.DepthBuffer;
+import uk.dsx.ats.utils.DepthDecoder;
+import uk.dsx.ats.utils.FxRateMatrix;
+import uk.dsx.ats.utils.PriceLevelBook;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static uk.dsx.ats.utils.DSXUtils.PRICE_PROPERTIES;
+import static uk.dsx.ats.utils.DSXUtils.logError;
 
-public class MarketDataRepository {
+public class MarketDataRepository implements AutoCloseable {
 
     private final MarketDataService service;
     private final CurrencyPair currencyPair;
 
-    private ExchangeRateHelper exchangeHalper;
+    private final DepthDecoder depthDecoder;
+    private final DepthBuffer depthBuffer = new DepthBuffer();
+    private final PriceLevelBook localOrderBook = new PriceLevelBook();
+    private final Map<CurrencyPair, Long> streamedFxLegs = new ConcurrentHashMap<>();
+    private final long fxRefreshTime;
+    private final long maxFxRateAge;
 
-    public MarketDataRepository(MarketDataService service, CurrencyPair currencyPair) {
+    private volatile FxRateMatrix fxRates;
+    private ScheduledExecutorService fxRefresher;
+    private boolean closed;
+
+    private MarketDataStream stream;
+    private String streamExchange;
+    private long streamFreshness;
+
+    // stream book state is changed under the lock, so a level is never applied between the check and a resync
+    private final Object streamBookLock = new Object();
+    private volatile boolean streamBookSynced;
+    // changed on reconnects and gaps, a snapshot requested before the change doesn't sync the book
+    private long streamBookEpoch;
+    // levels pushed while a snapshot is requested, they are applied on top of it
+    private List<BufferedLevel> bufferedLevels;
+
+    public MarketDataRepository(MarketDataService service, CurrencyPair currencyPair, String baseUrl) {
+        this(service, currencyPair, baseUrl, new ClientConfig(),
+                PriceProperties.DEFAULT_FX_REFRESH_TIME, PriceProperties.DEFAULT_MAX_FX_RATE_AGE);
+    }
+
+    /**
+     * @param clientConfig  rescu config of the exchange services, order book depth is requested with its timeouts
+     * @param fxRefreshTime how often fx legs which are not streamed are requested, in milliseconds
+     * @param maxFxRateAge  exchange rate with a leg older than that is not returned, in milliseconds
+     */
+    public MarketDataRepository(MarketDataService service, CurrencyPair currencyPair, String baseUrl, ClientConfig clientConfig,
+                                long fxRefreshTime, long maxFxRateAge) {
         this.service = service;
         this.currencyPair = currencyPair;
+        this.depthDecoder = new DepthDecoder(baseUrl, clientConfig);
+        this.fxRefreshTime = fxRefreshTime;
+        this.maxFxRateAge = maxFxRateAge;
+    }
+
+    /**
+     * Takes order book levels and tickers from the stream, REST requests are used while the stream is not fresh
+     */
+    public void attachStream(MarketDataStream stream, String exchangeName, long freshness) {
+        this.stream = stream;
+        this.streamExchange = exchangeName;
+        this.streamFreshness = freshness;
+        stream.subscribe(exchangeName, currencyPair, new StreamListener());
     }
 
+    /**
+     * Legs of the rate are requested on the first call and then refreshed in background every fxRefreshTime
+     * unless they are streamed, so the call itself makes no requests
+     *
+     * @return rate or null if it's unknown or any of its legs is older than maxFxRateAge
+     */
     public BigDecimal getExchangeRate(CurrencyPair indicativePair) throws Exception {
-        if (exchangeHalper != null) {
-            return exchangeHalper.getRate();
+        FxRateMatrix rates = fxRates;
+        if (rates == null) {
+            rates = startFxRates(indicativePair);
         }
+        return rates.getRate(currencyPair.counter, indicativePair.counter, System.currentTimeMillis() - maxFxRateAge);
+    }
 
-        ExchangeRateHelper helper = new ExchangeRateHelper(new CurrencyPair(currencyPair.counter, indicativePair.counter), false);
-        BigDecimal exchangeRate = helper.getRate();
+    /**
+     * Price levels mirror, updated by the stream while it's fresh and resynced from a REST snapshot otherwise.
+     * The snapshot is decoded into a reused {@link DepthBuffer}, so the method is called from one thread only.
+     * The same book is returned by every call, its listeners are notified about changed levels only.
+     */
+    public PriceLevelBook getPriceLevels() throws Exception {
+        if (streamBookSynced && isFresh(localOrderBook.getLastUpdateTime())) {
+            return localOrderBook;
+        }
 
-        if (exchangeRate != null) {
-            exchangeHalper = helper;
-            return exchangeRate;
-        } else {
-            exchangeHalper = new ExchangeRateHelper(new CurrencyPair(indicativePair.counter, currencyPair.counter), true);
-            ;
-            return exchangeHalper.getRate();
+        long epoch;
+        synchronized (streamBookLock) {
+            epoch = streamBookEpoch;
+            bufferedLevels = stream != null && stream.isConnected() ? new ArrayList<>() : null;
+        }
+        try {
+            requestDepth(depthBuffer);
+            synchronized (streamBookLock) {
+                localOrderBook.resync(depthBuffer);
+                // levels carry absolute volumes, so replaying the ones which were already in the snapshot is harmless
+                if (bufferedLevels != null) {
+                    for (BufferedLevel level : bufferedLevels) {
+                        localOrderBook.apply(level.side, level.price, level.volume);
+                    }
+                }
+                streamBookSynced = bufferedLevels != null && epoch == streamBookEpoch && stream.isConnected();
+            }
+        } finally {
+            synchronized (streamBookLock) {
+                bufferedLevels = null;
+            }
         }
+        return localOrderBook;
     }
 
-    public OrderBook getOrderBook() throws Exception {
-        return DSXUtils.unlimitedRepeatableRequest("getOrderBook",
-                () -> service.getOrderBook(currencyPair, PRICE_PROPERTIES.getDsxAccountType()));
+    /**
+     * Order book decoded straight into primitive levels, without XChange order book objects
+     */
+    protected void requestDepth(DepthBuffer target) throws Exception {
+        DSXUtils.unlimitedRepeatableRequest("getOrderBookDepth", () -> {
+            depthDecoder.read(currencyPair, PRICE_PROPERTIES.getDsxAccountType(), 0, target);
+            return target;
+        });
     }
 
-    class ExchangeRateHelper {
-        private final CurrencyPair pair;
-        private final boolean isInverted;
+    /**
+     * Stops the background refresh of exchange rates
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (fxRefresher != null) {
+            fxRefresher.shutdownNow();
+        }
+    }
 
-        ExchangeRateHelper(CurrencyPair pair, boolean isInverted) {
-            this.pair = pair;
-            this.isInverted = isInverted;
+    private synchronized FxRateMatrix startFxRates(CurrencyPair indicativePair) {
+        if (fxRates != null) {
+            return fxRates;
         }
+        if (closed) {
+            throw new IllegalStateException("Market data repository is closed");
+        }
+        FxRateMatrix rates = createFxRates(Arrays.asList(currencyPair.base, currencyPair.counter,
+                indicativePair.base, indicativePair.counter));
+        List<CurrencyPair> legs = rates.legsFor(currencyPair.counter, indicativePair.counter);
+        subscribeFxLegs(legs);
 
-        BigDecimal getRate() throws Exception {
-            try {
-                BigDecimal price = DSXUtils.unlimitedRepeatableRequest("getTicker",
-                        () -> service.getTicker(pair, PRICE_PROPERTIES.getDsxAccountType())).getLast();
+        fxRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fx-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fxRefresher.scheduleWithFixedDelay(() -> refreshFxLegs(rates, legs), fxRefreshTime, fxRefreshTime, TimeUnit.MILLISECONDS);
+        fxRates = rates;
+        return rates;
+    }
+
+    /**
+     * Finds out which pairs between the currencies are quoted on DSX (direct or inverted) and fills the matrix,
+     * the traded pair base currency is used as a pivot for the rest
+     */
+    private FxRateMatrix createFxRates(List<Currency> currencies) {
+        FxRateMatrix matrix = new FxRateMatrix(currencies, currencyPair.base);
+        List<Currency> known = matrix.getCurrencies();
+
+        for (int i = 0; i < known.size(); i++) {
+            for (int j = i + 1; j < known.size(); j++) {
+                if (!tryUpdateFxLeg(matrix, new CurrencyPair(known.get(i), known.get(j)))) {
+                    tryUpdateFxLeg(matrix, new CurrencyPair(known.get(j), known.get(i)));
+                }
+            }
+        }
+        return matrix;
+    }
 
-                return isInverted ? BigDecimal.ONE.divide(price) : price;
+    private void refreshFxLegs(FxRateMatrix matrix, List<CurrencyPair> legs) {
+        for (CurrencyPair leg : legs) {
+            if (isFresh(streamedFxLegs.getOrDefault(leg, 0L))) {
+                continue;
+            }
+            try {
+                if (!updateFxLeg(matrix, leg)) {
+                    logError("Unable to refresh exchange rate {}: no last price", leg);
+                }
             } catch (Exception e) {
-                return null;
+                // the previous rate is kept until it is older than maxFxRateAge
+                logError("Unable to refresh exchange rate {}: {}", leg, e.getMessage());
+            }
+        }
+    }
+
+    private void subscribeFxLegs(List<CurrencyPair> legs) {
+        if (stream == null) {
+            return;
+        }
+        for (CurrencyPair leg : legs) {
+            if (!leg.equals(currencyPair)) {
+                stream.subscribe(streamExchange, leg, new StreamListener());
+            }
+        }
+    }
+
+    private boolean isFresh(long updateTime) {
+        return stream != null && stream.isConnected() && updateTime + streamFreshness > System.currentTimeMillis();
+    }
+
+    private boolean tryUpdateFxLeg(FxRateMatrix matrix, CurrencyPair pair) {
+        try {
+            return updateFxLeg(matrix, pair);
+        } catch (Exception e) {
+            // pair is not quoted in that direction
+            return false;
+        }
+    }
+
+    private boolean updateFxLeg(FxRateMatrix matrix, CurrencyPair pair) throws Exception {
+        BigDecimal price = DSXUtils.unlimitedRepeatableRequest("getTicker",
+                () -> service.getTicker(pair, PRICE_PROPERTIES.getDsxAccountType())).getLast();
+
+        if (price == null || price.signum() <= 0) {
+            return false;
+        }
+        matrix.updateRate(pair, price, System.currentTimeMillis());
+        return true;
+    }
+
+    private void unsyncStreamBook() {
+        synchronized (streamBookLock) {
+            streamBookSynced = false;
+            streamBookEpoch++;
+        }
+    }
+
+    private static class BufferedLevel {
+
+        final Order.OrderType side;
+        final double price;
+        final double volume;
+
+        BufferedLevel(Order.OrderType side, double price, double volume) {
+            this.side = side;
+            this.price = price;
+            this.volume = volume;
+        }
+    }
+
+    class StreamListener implements MarketDataStream.Listener {
+
+        @Override
+        public void onConnected() {
+            // levels pushed before the reconnect are lost, the next getPriceLevels() resyncs from REST
+            unsyncStreamBook();
+        }
+
+        @Override
+        public void onDisconnected() {
+            unsyncStreamBook();
+        }
+
+        @Override
+        public void onOrderBookGap(String exchange, CurrencyPair pair) {
+            if (currencyPair.equals(pair)) {
+                unsyncStreamBook();
+            }
+        }
+
+        /**
+         * Levels are applied only while the book is synced, they are buffered while a snapshot is requested
+         * and dropped otherwise, as the next snapshot replaces them anyway
+         */
+        @Override
+        public void onOrderBookLevel(String exchange, CurrencyPair pair, Order.OrderType side, BigDecimal price, BigDecimal volume) {
+            if (!currencyPair.equals(pair) || price == null) {
+                return;
+            }
+            double levelVolume = volume == null ? 0 : volume.doubleValue();
+            synchronized (streamBookLock) {
+                if (bufferedLevels != null) {
+                    bufferedLevels.add(new BufferedLevel(side, price.doubleValue(), levelVolume));
+                } else if (streamBookSynced) {
+                    localOrderBook.apply(side, price.doubleValue(), levelVolume);
+                }
+            }
+        }
+
+        @Override
+        public void onTicker(String exchange, CurrencyPair pair, BigDecimal last, BigDecimal bid, BigDecimal ask) {
+            FxRateMatrix rates = fxRates;
+            if (rates != null && last != null) {
+                long now = System.currentTimeMillis();
+                rates.updateRate(pair, last, now);
+                streamedFxLegs.put(pair, now);
             }
         }
     }
-}
\ No newline at end of file
+}
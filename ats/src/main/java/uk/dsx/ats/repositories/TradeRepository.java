@@ -5,33 +5,81 @@ import org.knowm.xchange.dsx.dto.trade.DSXOrderStatusResult;
 import org.knowm.xchange.dsx.service.DSXTradeService;
 import org.knowm.xchange.dto.Order;
 import org.knowm.xchange.dto.trade.LimitOrder;
+import uk.dsx.ats.risk.PreTradeRiskGate;
+import uk.dsx.ats.risk.RiskLimitException;
 import uk.dsx.ats.utils.DSXUtils;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TradeRepository {
 
+    public interface OrderListener {
+        void onOrderPlaced(String orderId, CurrencyPair pair, BigDecimal volume, BigDecimal price);
+
+        void onOrderStatus(String orderId, DSXOrderStatusResult status);
+
+        void onOrderCancelled(String orderId);
+
+        void onAllOrdersCancelled();
+    }
+
     private final DSXTradeService tradeService;
+    private final PreTradeRiskGate riskGate;
+    private final List<OrderListener> orderListeners = new CopyOnWriteArrayList<>();
 
-    public TradeRepository(DSXTradeService tradeService) {
+    public TradeRepository(DSXTradeService tradeService, PreTradeRiskGate riskGate) {
         this.tradeService = tradeService;
+        this.riskGate = Objects.requireNonNull(riskGate, "riskGate");
+    }
+
+    public void addOrderListener(OrderListener listener) {
+        orderListeners.add(listener);
     }
 
     public DSXOrderStatusResult getOrderStatus(long orderId) throws Exception {
-        return DSXUtils.unlimitedRepeatableRequest("getOrderStatus", () -> tradeService.getOrderStatus(orderId));
+        DSXOrderStatusResult status = DSXUtils.unlimitedRepeatableRequest("getOrderStatus", () -> tradeService.getOrderStatus(orderId));
+        orderListeners.forEach(listener -> listener.onOrderStatus(String.valueOf(orderId), status));
+        return status;
     }
 
     public void cancelOrder(String orderId) throws Exception {
         DSXUtils.unlimitedRepeatableRequest("cancelOrder", () -> tradeService.cancelOrder(orderId));
+        orderListeners.forEach(listener -> listener.onOrderCancelled(orderId));
     }
 
+    /**
+     * @throws RiskLimitException if the order breaks pre-trade limits, it is not placed then
+     */
     public String buyLimit(BigDecimal volume, CurrencyPair pair, BigDecimal price) throws Exception {
+        riskGate.check(pair, volume, price);
+
         LimitOrder order = new LimitOrder(Order.OrderType.BID, volume, pair, "", new Date(), price);
-        return DSXUtils.unlimitedRepeatableRequest("placeLimitOrder", () -> tradeService.placeLimitOrder(order));
+        String orderId = DSXUtils.unlimitedRepeatableRequest("placeLimitOrder", () -> tradeService.placeLimitOrder(order));
+        orderListeners.forEach(listener -> listener.onOrderPlaced(orderId, pair, volume, price));
+        return orderId;
     }
 
     public void cancelAllOrders() throws Exception {
         DSXUtils.unlimitedRepeatableRequest("cancelAllOrders", tradeService::cancelAllOrders);
+        orderListeners.forEach(OrderListener::onAllOrdersCancelled);
+    }
+
+    /**
+     * Single attempt without waiting on connection problems, for callers which do their own retries
+     */
+    public void cancelAllOrdersOnce() throws Exception {
+        DSXUtils.singleRequest("cancelAllOrdersOnce", tradeService::cancelAllOrders);
+        orderListeners.forEach(OrderListener::onAllOrdersCancelled);
+    }
+
+    /**
+     * Makes a cheap authenticated request, so the connection is ready before it is really needed
+     */
+    public void warmUp() throws Exception {
+        DSXUtils.singleRequest("warmUp", tradeService::getOpenOrders);
     }
 }
@@ -0,0 +1,109 @@
+package uk.dsx.ats.risk;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import uk.dsx.ats.data.PriceProperties;
+import uk.dsx.ats.utils.SlidingWindowCounter;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Checks every order before it is sent: max price, max order size, orders per second and notional
+ * over the rolling window per instrument. Counters are lock-free and preallocated per instrument,
+ * limits are taken from the current price properties.
+ */
+public class PreTradeRiskGate {
+
+    // notional is counted in 1/100 of the counter currency
+    private static final double NOTIONAL_UNITS = 100;
+    private static final int ORDER_RATE_BUCKETS = 10;
+    private static final int NOTIONAL_BUCKETS = 60;
+
+    private final Supplier<PriceProperties> propertiesSupplier;
+    private final long notionalWindowMillis;
+    private final ConcurrentHashMap<CurrencyPair, InstrumentCounters> counters = new ConcurrentHashMap<>();
+
+    private volatile Limits limits;
+
+    public PreTradeRiskGate(Supplier<PriceProperties> propertiesSupplier) {
+        this.propertiesSupplier = propertiesSupplier;
+        this.notionalWindowMillis = TimeUnit.SECONDS.toMillis(propertiesSupplier.get().getNotionalWindowTime());
+    }
+
+    /**
+     * Counts the order if it passes all checks
+     *
+     * @throws RiskLimitException if any limit would be broken, the order is not counted then
+     */
+    public void check(CurrencyPair pair, BigDecimal volume, BigDecimal price) throws RiskLimitException {
+        Limits current = getLimits();
+
+        if (price.compareTo(current.maxPrice) > 0) {
+            throw new RiskLimitException("Order price " + price + " is above max price " + current.maxPrice);
+        }
+        if (volume.compareTo(current.maxOrderSize) > 0) {
+            throw new RiskLimitException("Order volume " + volume + " is above max order size " + current.maxOrderSize);
+        }
+
+        InstrumentCounters instrument = counters.get(pair);
+        if (instrument == null) {
+            instrument = counters.computeIfAbsent(pair, p -> new InstrumentCounters(notionalWindowMillis));
+        }
+        long now = System.currentTimeMillis();
+
+        long orders = instrument.orders.add(now, 1);
+        if (orders > current.maxOrdersPerSecond) {
+            instrument.orders.add(now, -1);
+            throw new RiskLimitException("More than " + current.maxOrdersPerSecond + " orders per second for " + pair);
+        }
+
+        long notional = Math.round(price.doubleValue() * volume.doubleValue() * NOTIONAL_UNITS);
+        long windowNotional = instrument.notional.add(now, notional);
+        if (windowNotional > current.maxNotional) {
+            instrument.notional.add(now, -notional);
+            instrument.orders.add(now, -1);
+            throw new RiskLimitException("Notional " + windowNotional / NOTIONAL_UNITS + " for " + pair + " is above "
+                    + current.maxNotional / NOTIONAL_UNITS + " per " + notionalWindowMillis + " ms");
+        }
+    }
+
+    private Limits getLimits() {
+        PriceProperties properties = propertiesSupplier.get();
+        Limits current = limits;
+        if (current == null || current.properties != properties) {
+            current = new Limits(properties);
+            limits = current;
+        }
+        return current;
+    }
+
+    private static class Limits {
+
+        final PriceProperties properties;
+        final BigDecimal maxPrice;
+        final BigDecimal maxOrderSize;
+        final long maxOrdersPerSecond;
+        final long maxNotional;
+
+        Limits(PriceProperties properties) {
+            this.properties = properties;
+            this.maxPrice = properties.getMaxPrice();
+            this.maxOrderSize = properties.getMaxOrderSize();
+            this.maxOrdersPerSecond = properties.getMaxOrdersPerSecond();
+            this.maxNotional = Math.min(SlidingWindowCounter.MAX_VALUE,
+                    Math.round(properties.getMaxNotional().doubleValue() * NOTIONAL_UNITS));
+        }
+    }
+
+    private static class InstrumentCounters {
+
+        final SlidingWindowCounter orders = new SlidingWindowCounter(1000L, ORDER_RATE_BUCKETS);
+        final SlidingWindowCounter notional;
+
+        InstrumentCounters(long notionalWindowMillis) {
+            this.notional = new SlidingWindowCounter(notionalWindowMillis, NOTIONAL_BUCKETS);
+        }
+    }
+}
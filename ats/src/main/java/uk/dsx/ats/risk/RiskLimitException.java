@@ -0,0 +1,13 @@
+package uk.dsx.ats.risk;
+
+/**
+ * Order was rejected by the pre-trade risk gate and was not sent to the exchange
+ */
+public class RiskLimitException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public RiskLimitException(String message) {
+        super(message);
+    }
+}
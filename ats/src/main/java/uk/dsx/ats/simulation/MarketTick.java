@@ -0,0 +1,19 @@
+package uk.dsx.ats.simulation;
+
+import lombok.Value;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+
+import java.math.BigDecimal;
+
+/**
+ * State of the markets at the moment of time
+ */
+@Value
+public class MarketTick {
+    long time;
+    OrderBook orderBook;
+    // lowest DSX trade price since the previous tick, null if there were no trades
+    BigDecimal lowTradePrice;
+    BigDecimal referencePrice;
+    BigDecimal exchangeRate;
+}
@@ -0,0 +1,29 @@
+package uk.dsx.ats.simulation;
+
+import uk.dsx.ats.utils.TradingClock;
+
+/**
+ * Virtual time of one simulation run, moved forward by sleeps and request latency
+ */
+public class SimulatedClock implements TradingClock {
+
+    private long time;
+
+    public SimulatedClock(long startTime) {
+        this.time = startTime;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return time;
+    }
+
+    @Override
+    public void sleep(long millis) {
+        advance(millis);
+    }
+
+    public void advance(long millis) {
+        time += Math.max(millis, 0);
+    }
+}
@@ -0,0 +1,278 @@
+package uk.dsx.ats.simulation;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dsx.dto.trade.DSXOrderStatusResult;
+import org.knowm.xchange.dto.account.Balance;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import uk.dsx.ats.data.PriceProperties;
+import uk.dsx.ats.repositories.AccountRepository;
+import uk.dsx.ats.repositories.AveragePriceRepository;
+import uk.dsx.ats.repositories.BalanceLedger;
+import uk.dsx.ats.repositories.MarketDataRepository;
+import uk.dsx.ats.repositories.TradeRepository;
+import uk.dsx.ats.risk.PreTradeRiskGate;
+import uk.dsx.ats.utils.DepthBuffer;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DSX and reference venues of one simulation run. Repositories made by it answer from the market tick at the
+ * virtual time, every request moves the clock by the request latency. Exchange rate and balance are not requests,
+ * live repositories answer them from the background fx refresh and the balance ledger.
+ * A resting order is filled completely at its price when DSX trades below it, partial fills and queue position
+ * are not simulated. Not thread safe, each run has its own exchange.
+ */
+public class SimulatedExchange {
+
+    private static final int ORDER_ACTIVE = 0;
+    private static final int ORDER_FILLED = 1;
+    private static final int ORDER_CANCELLED = 2;
+
+    private final SimulatedMarket market;
+    private final SimulatedClock clock;
+    private final CurrencyPair pair;
+    private final long requestLatency;
+    private final Map<Long, SimulatedOrder> orders = new LinkedHashMap<>();
+
+    private BigDecimal funds;
+    private long nextOrderId = 1;
+    private long settledTime;
+
+    private int dsxRequests;
+    private int referenceRequests;
+    private int placedOrders;
+    private int filledOrders;
+    private long firstFillTime = -1;
+    private BigDecimal filledVolume = BigDecimal.ZERO;
+    // sum of volume * (fill price in reference currency / reference price - 1)
+    private BigDecimal weightedFillDeviation = BigDecimal.ZERO;
+
+    public SimulatedExchange(SimulatedMarket market, SimulatedClock clock, CurrencyPair pair, BigDecimal funds, long requestLatency) {
+        this.market = market;
+        this.clock = clock;
+        this.pair = pair;
+        this.funds = funds;
+        this.requestLatency = requestLatency;
+        this.settledTime = clock.currentTimeMillis();
+    }
+
+    public MarketDataRepository marketDataRepository() {
+        return new MarketDataRepository(null, pair, "http://localhost/") {
+            @Override
+            protected void requestDepth(DepthBuffer target) throws Exception {
+                OrderBook orderBook = dsxRequest().getOrderBook();
+                target.clear();
+                for (LimitOrder bid : orderBook.getBids()) {
+                    target.addBid(bid.getLimitPrice().doubleValue(), bid.getOriginalAmount().doubleValue());
+                }
+                for (LimitOrder ask : orderBook.getAsks()) {
+                    target.addAsk(ask.getLimitPrice().doubleValue(), ask.getOriginalAmount().doubleValue());
+                }
+            }
+
+            @Override
+            public BigDecimal getExchangeRate(CurrencyPair indicativePair) {
+                return market.tickAt(clock.currentTimeMillis()).getExchangeRate();
+            }
+        };
+    }
+
+    /**
+     * Orders are accepted by the simulated exchange only, the risk gate counts wall clock time and is not checked
+     */
+    public TradeRepository tradeRepository() {
+        return new TradeRepository(null, new PreTradeRiskGate(PriceProperties::new)) {
+            @Override
+            public DSXOrderStatusResult getOrderStatus(long orderId) throws Exception {
+                dsxRequest();
+                SimulatedOrder order = orders.get(orderId);
+                if (order == null) {
+                    throw new IllegalArgumentException("Unknown order " + orderId);
+                }
+                return order.toStatus();
+            }
+
+            @Override
+            public void cancelOrder(String orderId) throws Exception {
+                dsxRequest();
+                SimulatedOrder order = orders.get(Long.parseLong(orderId));
+                if (order != null) {
+                    cancel(order);
+                }
+            }
+
+            @Override
+            public String buyLimit(BigDecimal volume, CurrencyPair pair, BigDecimal price) throws Exception {
+                dsxRequest();
+                BigDecimal amount = volume.multiply(price);
+                if (amount.compareTo(funds) > 0) {
+                    throw new IllegalStateException("Not enough funds for " + volume + " by " + price);
+                }
+                funds = funds.subtract(amount);
+                SimulatedOrder order = new SimulatedOrder(nextOrderId++, volume, price);
+                orders.put(order.id, order);
+                placedOrders++;
+                return String.valueOf(order.id);
+            }
+
+            @Override
+            public void cancelAllOrders() throws Exception {
+                dsxRequest();
+                orders.values().forEach(SimulatedExchange.this::cancel);
+            }
+
+            @Override
+            public void cancelAllOrdersOnce() throws Exception {
+                cancelAllOrders();
+            }
+
+            @Override
+            public void warmUp() throws Exception {
+                dsxRequest();
+            }
+        };
+    }
+
+    public AccountRepository accountRepository() {
+        return new AccountRepository(null, pair.counter, new BalanceLedger(), 0L) {
+            @Override
+            public Balance getBalance() {
+                BigDecimal reserved = orders.values().stream()
+                        .filter(order -> order.status == ORDER_ACTIVE)
+                        .map(order -> order.remainingVolume.multiply(order.price))
+                        .reduce(BigDecimal.ZERO, BigDecimal::add);
+                return new Balance(pair.counter, funds.add(reserved), funds, reserved);
+            }
+
+            @Override
+            public void reconcile() {
+            }
+        };
+    }
+
+    public AveragePriceRepository averagePriceRepository(CurrencyPair referencePair, int scale) {
+        return new AveragePriceRepository(Collections.emptyList(), referencePair, scale) {
+            @Override
+            public BigDecimal getAveragePrice() throws Exception {
+                referenceRequests++;
+                return request().getReferencePrice();
+            }
+        };
+    }
+
+    public int getDsxRequests() {
+        return dsxRequests;
+    }
+
+    public int getReferenceRequests() {
+        return referenceRequests;
+    }
+
+    public int getPlacedOrders() {
+        return placedOrders;
+    }
+
+    public int getFilledOrders() {
+        return filledOrders;
+    }
+
+    /**
+     * @return virtual milliseconds from the start to the first fill, -1 if nothing was filled
+     */
+    public long getTimeToFill() {
+        return firstFillTime < 0 ? -1 : firstFillTime - market.getStartTime();
+    }
+
+    public BigDecimal getFilledVolume() {
+        return filledVolume;
+    }
+
+    /**
+     * @return volume weighted fill price in reference currency relative to reference price, e.g. -0.01 is 1% cheaper,
+     * null if nothing was filled
+     */
+    public Double getFillPriceVsReference() {
+        return filledVolume.signum() == 0 ? null : weightedFillDeviation.doubleValue() / filledVolume.doubleValue();
+    }
+
+    private MarketTick dsxRequest() throws SimulationFinishedException {
+        dsxRequests++;
+        return request();
+    }
+
+    private MarketTick request() throws SimulationFinishedException {
+        clock.advance(requestLatency);
+        long now = clock.currentTimeMillis();
+        if (now > market.getEndTime()) {
+            throw new SimulationFinishedException(now);
+        }
+        settle(now);
+        return market.tickAt(now);
+    }
+
+    /**
+     * Fills resting orders by trades which happened since the previous request
+     */
+    private void settle(long now) {
+        for (SimulatedOrder order : orders.values()) {
+            if (order.status != ORDER_ACTIVE) {
+                continue;
+            }
+            BigDecimal lowTradePrice = market.lowestTradePrice(Math.max(settledTime, order.placedTime), now);
+            if (lowTradePrice != null && lowTradePrice.compareTo(order.price) < 0) {
+                fill(order, now);
+            }
+        }
+        settledTime = now;
+    }
+
+    private void fill(SimulatedOrder order, long now) {
+        order.status = ORDER_FILLED;
+        order.remainingVolume = BigDecimal.ZERO;
+        filledOrders++;
+        filledVolume = filledVolume.add(order.volume);
+        if (firstFillTime < 0) {
+            firstFillTime = now;
+        }
+
+        MarketTick tick = market.tickAt(now);
+        double fillPrice = order.price.doubleValue() * tick.getExchangeRate().doubleValue();
+        double deviation = fillPrice / tick.getReferencePrice().doubleValue() - 1;
+        weightedFillDeviation = weightedFillDeviation.add(order.volume.multiply(BigDecimal.valueOf(deviation)));
+    }
+
+    private void cancel(SimulatedOrder order) {
+        if (order.status == ORDER_ACTIVE) {
+            order.status = ORDER_CANCELLED;
+            funds = funds.add(order.remainingVolume.multiply(order.price));
+        }
+    }
+
+    private class SimulatedOrder {
+
+        final long id;
+        final BigDecimal volume;
+        final BigDecimal price;
+        final long placedTime;
+
+        int status = ORDER_ACTIVE;
+        BigDecimal remainingVolume;
+
+        SimulatedOrder(long id, BigDecimal volume, BigDecimal price) {
+            this.id = id;
+            this.volume = volume;
+            this.price = price;
+            this.placedTime = clock.currentTimeMillis();
+            this.remainingVolume = volume;
+        }
+
+        DSXOrderStatusResult toStatus() {
+            return new DSXOrderStatusResult(pair.toString(), "buy", remainingVolume, volume, price,
+                    placedTime / 1000, status, "limit", null);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package uk.dsx.ats.simulation;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import uk.dsx.ats.data.SyntheticMarketProperties;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Recorded or generated market ticks, ordered by time. Immutable, so one market is shared by parallel runs.
+ */
+public class SimulatedMarket {
+
+    private final List<MarketTick> ticks;
+    private final long[] times;
+
+    public SimulatedMarket(List<MarketTick> ticks) {
+        if (ticks.isEmpty()) {
+            throw new IllegalArgumentException("Market without ticks");
+        }
+        this.ticks = new ArrayList<>(ticks);
+        this.ticks.sort(Comparator.comparingLong(MarketTick::getTime));
+        this.times = this.ticks.stream().mapToLong(MarketTick::getTime).toArray();
+    }
+
+    public long getStartTime() {
+        return times[0];
+    }
+
+    public long getEndTime() {
+        return times[times.length - 1];
+    }
+
+    public int size() {
+        return ticks.size();
+    }
+
+    /**
+     * Last tick at or before the time, the first tick for earlier times
+     */
+    public MarketTick tickAt(long time) {
+        return ticks.get(Math.max(lastIndexAtOrBefore(time), 0));
+    }
+
+    /**
+     * Lowest trade price of ticks after from and up to to, null if there were no trades
+     */
+    public BigDecimal lowestTradePrice(long from, long to) {
+        BigDecimal lowest = null;
+        for (int i = lastIndexAtOrBefore(from) + 1; i < times.length && times[i] <= to; i++) {
+            BigDecimal price = ticks.get(i).getLowTradePrice();
+            if (price != null && (lowest == null || price.compareTo(lowest) < 0)) {
+                lowest = price;
+            }
+        }
+        return lowest;
+    }
+
+    private int lastIndexAtOrBefore(long time) {
+        int index = Arrays.binarySearch(times, time);
+        if (index < 0) {
+            return -index - 2;
+        }
+        // equal times are possible in recorded data
+        while (index + 1 < times.length && times[index + 1] == time) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Reads ticks from csv lines "time,referencePrice,exchangeRate,lowTradePrice,bidPrice1,bidVolume1,bidPrice2,bidVolume2...",
+     * time is in milliseconds, lowTradePrice is empty if there were no trades. Lines which don't start with a digit are skipped.
+     */
+    public static SimulatedMarket fromCsv(Path file, CurrencyPair pair) throws IOException {
+        List<MarketTick> ticks = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || !Character.isDigit(line.charAt(0))) {
+                continue;
+            }
+
+            String[] values = line.split(",", -1);
+            if (values.length < 4 || values.length % 2 != 0) {
+                throw new IOException("Wrong number of values in line " + lineNumber + " of " + file);
+            }
+            try {
+                List<LimitOrder> bids = new ArrayList<>();
+                for (int i = 4; i + 1 < values.length; i += 2) {
+                    bids.add(bid(pair, new BigDecimal(values[i].trim()), new BigDecimal(values[i + 1].trim())));
+                }
+                ticks.add(new MarketTick(Long.parseLong(values[0].trim()),
+                        new OrderBook(null, Collections.emptyList(), bids),
+                        values[3].trim().isEmpty() ? null : new BigDecimal(values[3].trim()),
+                        new BigDecimal(values[1].trim()),
+                        new BigDecimal(values[2].trim())));
+            } catch (NumberFormatException e) {
+                throw new IOException("Wrong number in line " + lineNumber + " of " + file, e);
+            }
+        }
+        return new SimulatedMarket(ticks);
+    }
+
+    public static SimulatedMarket synthetic(CurrencyPair pair, SyntheticMarketProperties properties, int priceScale, int volumeScale) {
+        Random random = new Random(properties.getSeed());
+        double volatility = properties.getVolatility().doubleValue();
+        double meanPremium = properties.getPremium().doubleValue();
+        double premiumVolatility = properties.getPremiumVolatility().doubleValue();
+        double premiumReversion = properties.getPremiumReversion().doubleValue();
+        double tradeProbability = properties.getTradeProbability().doubleValue();
+        double tradeVolume = properties.getTradeVolume().doubleValue();
+        double levelStep = properties.getLevelStep().doubleValue();
+        double levelVolume = properties.getLevelVolume().doubleValue();
+        BigDecimal exchangeRate = properties.getExchangeRate();
+
+        double bidPrice = properties.getStartPrice().doubleValue();
+        double premium = meanPremium;
+        List<MarketTick> ticks = new ArrayList<>(properties.getTicks());
+        for (int tick = 0; tick < properties.getTicks(); tick++) {
+            bidPrice *= 1 + volatility * random.nextGaussian();
+            premium += premiumReversion * (meanPremium - premium) + premiumVolatility * random.nextGaussian();
+
+            double[] prices = new double[properties.getLevels()];
+            double[] volumes = new double[prices.length];
+            List<LimitOrder> bids = new ArrayList<>(prices.length);
+            for (int level = 0; level < prices.length; level++) {
+                prices[level] = bidPrice - level * levelStep;
+                volumes[level] = levelVolume * (0.5 + random.nextDouble());
+                bids.add(bid(pair, scale(prices[level], priceScale), scale(volumes[level], volumeScale)));
+            }
+
+            // sell order of random size takes bids from the top until it is filled
+            BigDecimal lowTradePrice = null;
+            if (prices.length > 0 && random.nextDouble() < tradeProbability) {
+                double remaining = -tradeVolume * Math.log(1 - random.nextDouble());
+                int level = 0;
+                while (level + 1 < prices.length && remaining > volumes[level]) {
+                    remaining -= volumes[level++];
+                }
+                lowTradePrice = scale(prices[level], priceScale);
+            }
+
+            ticks.add(new MarketTick(tick * properties.getTickTime(),
+                    new OrderBook(null, Collections.emptyList(), bids),
+                    lowTradePrice,
+                    scale(bidPrice * exchangeRate.doubleValue() * (1 + premium), priceScale),
+                    exchangeRate));
+        }
+        return new SimulatedMarket(ticks);
+    }
+
+    private static LimitOrder bid(CurrencyPair pair, BigDecimal price, BigDecimal volume) {
+        return new LimitOrder(Order.OrderType.BID, volume, pair, "", null, price);
+    }
+
+    private static BigDecimal scale(double value, int scale) {
+        return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_EVEN);
+    }
+}
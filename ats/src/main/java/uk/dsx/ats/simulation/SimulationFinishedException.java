@@ -0,0 +1,13 @@
+package uk.dsx.ats.simulation;
+
+/**
+ * Thrown by simulated requests made after the end of the market data
+ */
+public class SimulationFinishedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public SimulationFinishedException(long time) {
+        super("Market data ended before " + time);
+    }
+}
@@ -0,0 +1,49 @@
+package uk.dsx.ats.simulation;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Outcome of the algorithm run with one combination of swept price properties
+ */
+@Value
+public class SweepResult {
+
+    public static final String HEADER = "parameters,outcome,placedOrders,filledOrders,fillRate,timeToFill,fillPriceVsReference,dsxRequests,referenceRequests";
+
+    Map<String, BigDecimal> parameters;
+    String outcome;
+    int placedOrders;
+    int filledOrders;
+    // virtual milliseconds, -1 if nothing was filled
+    long timeToFill;
+    // relative to reference price, null if nothing was filled
+    Double fillPriceVsReference;
+    int dsxRequests;
+    int referenceRequests;
+
+    public static SweepResult of(Map<String, BigDecimal> parameters, String outcome, SimulatedExchange exchange) {
+        return new SweepResult(parameters, outcome, exchange.getPlacedOrders(), exchange.getFilledOrders(),
+                exchange.getTimeToFill(), exchange.getFillPriceVsReference(),
+                exchange.getDsxRequests(), exchange.getReferenceRequests());
+    }
+
+    /**
+     * Part of placed orders which were filled, the rest were replaced or left when the market data ended
+     */
+    public double getFillRate() {
+        return placedOrders == 0 ? 0 : (double) filledOrders / placedOrders;
+    }
+
+    public String toCsv() {
+        StringBuilder values = new StringBuilder();
+        parameters.forEach((name, value) -> values.append(values.length() == 0 ? "" : " ").append(name).append('=').append(value.toPlainString()));
+        return String.join(",", values, outcome, String.valueOf(placedOrders), String.valueOf(filledOrders),
+                String.format(Locale.ROOT, "%.4f", getFillRate()), String.valueOf(timeToFill),
+                fillPriceVsReference == null ? "" : String.format(Locale.ROOT, "%.6f", fillPriceVsReference),
+                String.valueOf(dsxRequests), String.valueOf(referenceRequests));
+    }
+}
@@ -0,0 +1,50 @@
+package uk.dsx.ats.streaming;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+
+import java.math.BigDecimal;
+
+/**
+ * Push source of market data. Subscriptions survive reconnects, listeners are called from the stream thread.
+ */
+public interface MarketDataStream extends AutoCloseable {
+
+    interface Listener {
+
+        default void onConnected() {
+        }
+
+        default void onDisconnected() {
+        }
+
+        /**
+         * @param volume new volume of the price level, 0 if the level was deleted
+         */
+        default void onOrderBookLevel(String exchange, CurrencyPair pair, Order.OrderType side, BigDecimal price, BigDecimal volume) {
+        }
+
+        /**
+         * Some order book levels were missed, the local book has to be resynced from a snapshot
+         */
+        default void onOrderBookGap(String exchange, CurrencyPair pair) {
+        }
+
+        default void onTicker(String exchange, CurrencyPair pair, BigDecimal last, BigDecimal bid, BigDecimal ask) {
+        }
+    }
+
+    void subscribe(String exchange, CurrencyPair pair, Listener listener);
+
+    void start();
+
+    boolean isConnected();
+
+    /**
+     * Time of the last message (including heartbeats) received from the stream
+     */
+    long getLastMessageTime();
+
+    @Override
+    void close();
+}
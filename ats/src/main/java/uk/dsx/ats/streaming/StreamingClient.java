@@ -0,0 +1,367 @@
+package uk.dsx.ats.streaming;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static uk.dsx.ats.utils.DSXUtils.logError;
+import static uk.dsx.ats.utils.DSXUtils.logInfo;
+
+/**
+ * Streaming client for JSON messages over a WebSocket (ws:// or wss://), one message per text frame.
+ * <p>
+ * Client sends {"event":"subscribe","exchange":"DSX","pair":"BTC/EUR"} for every subscription after each connect,
+ * server pushes {"channel":"book","exchange":..,"pair":..,"side":"bid"|"ask","price":..,"volume":..,"seq":..},
+ * {"channel":"ticker","exchange":..,"pair":..,"last":..,"bid":..,"ask":..} and {"event":"heartbeat"}.
+ * Optional "seq" of book messages grows by one for each exchange and pair: older ones are dropped,
+ * a skipped number is reported to listeners as a gap.
+ * Connection without any message or ping during the read timeout is considered dead and is reopened.
+ * A message which can't be parsed is logged and skipped.
+ */
+public class StreamingClient implements MarketDataStream {
+
+    private static final long CONNECT_TIMEOUT_MILLIS = 5000L;
+    private static final long READ_TIMEOUT_MILLIS = 30000L;
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 1000L;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30000L;
+
+    private final URI uri;
+    private final long readTimeout;
+    private final HttpClient httpClient;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private volatile boolean closed;
+    private volatile boolean connected;
+    private volatile long lastMessageTime;
+    private volatile WebSocket webSocket;
+    // WebSocket allows one outstanding send, so sends of a connection are chained
+    private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+    private Thread thread;
+
+    public StreamingClient(URI uri) {
+        this(uri, READ_TIMEOUT_MILLIS);
+    }
+
+    StreamingClient(URI uri, long readTimeout) {
+        this.uri = uri;
+        this.readTimeout = readTimeout;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MILLIS))
+                .build();
+    }
+
+    /**
+     * @param address ws:// or wss:// url of the stream, host:port is taken as ws://host:port/
+     */
+    public static StreamingClient fromAddress(String address) {
+        if (address.startsWith("ws://") || address.startsWith("wss://")) {
+            return new StreamingClient(URI.create(address));
+        }
+        if (address.lastIndexOf(':') < 0) {
+            throw new IllegalArgumentException("Stream address should be ws:// url or host:port, got " + address);
+        }
+        return new StreamingClient(URI.create("ws://" + address + "/"));
+    }
+
+    @Override
+    public void subscribe(String exchange, CurrencyPair pair, Listener listener) {
+        Subscription subscription = new Subscription(exchange, pair, listener);
+        subscriptions.add(subscription);
+
+        WebSocket current = webSocket;
+        if (connected && current != null) {
+            send(current, subscription);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::run, "market-data-stream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public long getLastMessageTime() {
+        return lastMessageTime;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        WebSocket current = webSocket;
+        if (current != null) {
+            current.abort();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Keeps a connection open: connects, waits until it's closed or silent for the read timeout, then reconnects
+     */
+    private void run() {
+        long reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+
+        while (!closed) {
+            CompletableFuture<Void> disconnected = new CompletableFuture<>();
+            WebSocket ws = null;
+            try {
+                ws = httpClient.newWebSocketBuilder()
+                        .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MILLIS))
+                        .buildAsync(uri, new SocketListener(disconnected))
+                        .get(CONNECT_TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS);
+                reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+                awaitDisconnect(ws, disconnected);
+            } catch (ExecutionException | TimeoutException e) {
+                if (!closed) {
+                    logError("Market data stream {} is not available: {}", uri, (e.getCause() == null ? e : e.getCause()).getMessage());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                if (ws != null) {
+                    // no-op for a connection which was closed already
+                    ws.abort();
+                }
+                onDisconnected();
+            }
+
+            if (!closed) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(reconnectDelay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void awaitDisconnect(WebSocket ws, CompletableFuture<Void> disconnected) throws InterruptedException {
+        while (!closed) {
+            try {
+                disconnected.get(Math.max(readTimeout / 4, 10), TimeUnit.MILLISECONDS);
+                return;
+            } catch (ExecutionException e) {
+                if (!closed) {
+                    logError("Market data stream {} disconnected: {}", uri, e.getCause().getMessage());
+                }
+                return;
+            } catch (TimeoutException e) {
+                if (lastMessageTime + readTimeout < System.currentTimeMillis()) {
+                    logError("Market data stream {} is silent for {} ms, reconnecting", uri, readTimeout);
+                    ws.abort();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Called before any message of the new connection is delivered, so sequences are reset before they are checked
+     */
+    private void onConnected(WebSocket ws) {
+        logInfo("Market data stream {} connected", uri);
+        lastMessageTime = System.currentTimeMillis();
+        synchronized (this) {
+            lastSend = CompletableFuture.completedFuture(null);
+        }
+        webSocket = ws;
+        connected = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.lastSequence = 0;
+            send(ws, subscription);
+            subscription.listener.onConnected();
+        }
+    }
+
+    private void onDisconnected() {
+        boolean wasConnected = connected;
+        connected = false;
+        webSocket = null;
+        if (wasConnected) {
+            subscriptions.forEach(subscription -> subscription.listener.onDisconnected());
+        }
+    }
+
+    private void send(WebSocket ws, Subscription subscription) {
+        ObjectNode message = mapper.createObjectNode();
+        message.put("event", "subscribe");
+        message.put("exchange", subscription.exchange);
+        message.put("pair", subscription.pair.toString());
+        String text = message.toString();
+        synchronized (this) {
+            lastSend = lastSend
+                    .handle((result, e) -> null)
+                    .thenCompose(ignored -> ws.sendText(text, true))
+                    .whenComplete((result, e) -> {
+                        if (e != null && !closed) {
+                            logError("Market data stream {} subscription {} failed: {}", uri, text, e.getMessage());
+                        }
+                    });
+        }
+    }
+
+    private void dispatch(String text) {
+        try {
+            JsonNode message = mapper.readTree(text);
+            if (message == null || !message.hasNonNull("channel") || !message.hasNonNull("pair")) {
+                return;
+            }
+
+            String channel = message.get("channel").asText();
+            String exchange = message.path("exchange").asText();
+            CurrencyPair pair = new CurrencyPair(message.path("pair").asText());
+
+            if ("book".equals(channel)) {
+                Order.OrderType side = "ask".equalsIgnoreCase(message.path("side").asText())
+                        ? Order.OrderType.ASK : Order.OrderType.BID;
+                BigDecimal price = decimal(message, "price");
+                BigDecimal volume = decimal(message, "volume");
+                long sequence = message.path("seq").asLong(0);
+                for (Subscription subscription : subscriptions) {
+                    if (subscription.matches(exchange, pair)) {
+                        dispatchBookLevel(subscription, text, sequence, exchange, pair, side, price, volume);
+                    }
+                }
+            } else if ("ticker".equals(channel)) {
+                BigDecimal last = decimal(message, "last");
+                BigDecimal bid = decimal(message, "bid");
+                BigDecimal ask = decimal(message, "ask");
+                for (Subscription subscription : subscriptions) {
+                    if (subscription.matches(exchange, pair)) {
+                        try {
+                            subscription.listener.onTicker(exchange, pair, last, bid, ask);
+                        } catch (RuntimeException e) {
+                            logError("Stream listener failed on message {}: {}", text, e.getMessage());
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logError("Malformed stream message {}: {}", text, e.getMessage());
+        }
+    }
+
+    private void dispatchBookLevel(Subscription subscription, String text, long sequence, String exchange,
+                                   CurrencyPair pair, Order.OrderType side, BigDecimal price, BigDecimal volume) {
+        try {
+            if (sequence > 0) {
+                if (sequence <= subscription.lastSequence) {
+                    return;
+                }
+                boolean gap = subscription.lastSequence > 0 && sequence != subscription.lastSequence + 1;
+                subscription.lastSequence = sequence;
+                if (gap) {
+                    subscription.listener.onOrderBookGap(exchange, pair);
+                }
+            }
+            subscription.listener.onOrderBookLevel(exchange, pair, side, price, volume);
+        } catch (RuntimeException e) {
+            logError("Stream listener failed on message {}: {}", text, e.getMessage());
+        }
+    }
+
+    private static BigDecimal decimal(JsonNode message, String field) {
+        JsonNode value = message.get(field);
+        return value == null || value.isNull() ? null : new BigDecimal(value.asText());
+    }
+
+    /**
+     * Messages are requested one by one, so listener methods are never called concurrently
+     */
+    private class SocketListener implements WebSocket.Listener {
+
+        private final CompletableFuture<Void> disconnected;
+        private final StringBuilder parts = new StringBuilder();
+
+        SocketListener(CompletableFuture<Void> disconnected) {
+            this.disconnected = disconnected;
+        }
+
+        @Override
+        public void onOpen(WebSocket ws) {
+            onConnected(ws);
+            ws.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            lastMessageTime = System.currentTimeMillis();
+            parts.append(data);
+            if (last) {
+                String text = parts.toString();
+                parts.setLength(0);
+                dispatch(text);
+            }
+            ws.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onPing(WebSocket ws, ByteBuffer message) {
+            lastMessageTime = System.currentTimeMillis();
+            ws.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+            disconnected.complete(null);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            disconnected.completeExceptionally(error);
+        }
+    }
+
+    private static class Subscription {
+
+        final String exchange;
+        final CurrencyPair pair;
+        final Listener listener;
+
+        // sequence of the last book message, accessed from the socket listener only, whose calls are sequential
+        long lastSequence;
+
+        Subscription(String exchange, CurrencyPair pair, Listener listener) {
+            this.exchange = exchange;
+            this.pair = pair;
+            this.listener = listener;
+        }
+
+        boolean matches(String exchange, CurrencyPair pair) {
+            return this.exchange.equalsIgnoreCase(exchange) && this.pair.equals(pair);
+        }
+    }
+}
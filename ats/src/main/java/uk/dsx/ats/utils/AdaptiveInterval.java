@@ -0,0 +1,88 @@
+package uk.dsx.ats.utils;
+
+/**
+ * Polling interval which gets shorter when the market is close to a trigger or moves fast, and longer when nothing is going on.
+ * Urgency 0 gives maxInterval, 0.5 gives the configured base interval and 1 gives minInterval,
+ * where minInterval is the shortest interval the request budget allows for the requests checks actually make.
+ */
+public class AdaptiveInterval {
+
+    // weight of the last price move in the volatility average
+    private static final double VOLATILITY_WEIGHT = 0.2;
+    // weight of the last check in the average of requests per check
+    private static final double REQUESTS_WEIGHT = 0.3;
+
+    private final long baseInterval;
+    private final long maxInterval;
+    private final int requestsPerMinute;
+    private final double volatilityThreshold;
+
+    private double lastPrice = Double.NaN;
+    private double volatility;
+    private double requestsPerCheck = 1;
+
+    /**
+     * @param baseInterval        configured interval in milliseconds
+     * @param requestsPerMinute   request budget
+     * @param maxMultiplier       how many times the interval can be longer than the base one
+     * @param volatilityThreshold relative price move per check which is treated as high volatility
+     */
+    public AdaptiveInterval(long baseInterval, int requestsPerMinute, double maxMultiplier, double volatilityThreshold) {
+        this.baseInterval = baseInterval;
+        this.maxInterval = Math.max((long) (baseInterval * maxMultiplier), baseInterval);
+        this.requestsPerMinute = requestsPerMinute;
+        this.volatilityThreshold = volatilityThreshold;
+    }
+
+    /**
+     * @param requests requests made by the last check, e.g. none when the data came from the stream
+     */
+    public synchronized void onRequests(long requests) {
+        requestsPerCheck = REQUESTS_WEIGHT * Math.max(requests, 0) + (1 - REQUESTS_WEIGHT) * requestsPerCheck;
+    }
+
+    public synchronized long getMinInterval() {
+        return requestsPerMinute > 0 ? Math.round(60_000L * requestsPerCheck / requestsPerMinute) : baseInterval;
+    }
+
+    public synchronized void onPrice(double price) {
+        if (Double.isNaN(price) || price <= 0) {
+            return;
+        }
+        if (!Double.isNaN(lastPrice)) {
+            double move = Math.abs(price - lastPrice) / lastPrice;
+            volatility = VOLATILITY_WEIGHT * move + (1 - VOLATILITY_WEIGHT) * volatility;
+        }
+        lastPrice = price;
+    }
+
+    public synchronized double getVolatility() {
+        return volatility;
+    }
+
+    /**
+     * @param proximity how close the market is to a trigger, 0 - far away, 1 - at the trigger
+     * @return interval in milliseconds before the next check
+     */
+    public synchronized long next(double proximity) {
+        double volatilityUrgency = volatilityThreshold > 0 ? volatility / volatilityThreshold : 0;
+        double urgency = clamp(Math.max(Double.isNaN(proximity) ? 0 : proximity, volatilityUrgency));
+
+        long minInterval = getMinInterval();
+        long base = Math.max(baseInterval, minInterval);
+        long max = Math.max(maxInterval, base);
+        if (urgency < 0.5) {
+            return interpolate(max, base, urgency * 2);
+        } else {
+            return interpolate(base, minInterval, (urgency - 0.5) * 2);
+        }
+    }
+
+    public static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+
+    private static long interpolate(long from, long to, double fraction) {
+        return Math.round(from + (to - from) * fraction);
+    }
+}
@@ -0,0 +1,127 @@
+package uk.dsx.ats.utils;
+
+import uk.dsx.ats.data.Config;
+import uk.dsx.ats.data.PriceProperties;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static uk.dsx.ats.utils.DSXUtils.*;
+
+/**
+ * Watches config.json and swaps the current {@link PriceProperties} snapshot when the file changes.
+ * New properties are used only if they are valid and do not change properties applied on start,
+ * otherwise the current snapshot stays. Readers take the snapshot once per decision cycle.
+ */
+public class ConfigWatcher implements Supplier<PriceProperties>, AutoCloseable {
+
+    // editors may write the file in several steps, wait until it settles
+    private static final long SETTLE_DELAY_MILLIS = 200L;
+
+    private final Path configFile;
+    private final AtomicReference<PriceProperties> current;
+
+    private volatile boolean closed;
+    private Thread thread;
+
+    public ConfigWatcher(String configFile, PriceProperties initial) {
+        this.configFile = Paths.get(configFile).toAbsolutePath();
+        this.current = new AtomicReference<>(initial);
+    }
+
+    @Override
+    public PriceProperties get() {
+        return current.get();
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::watch, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @return true if the new properties were applied
+     */
+    public boolean reload() {
+        PriceProperties previous = current.get();
+        PriceProperties loaded;
+        try {
+            Config config = readConfig(configFile.toString());
+            loaded = config == null ? null : config.getPriceProperties();
+        } catch (IOException e) {
+            logError("Config {} can't be read, keeping current properties: {}", configFile, e.getMessage());
+            return false;
+        }
+
+        if (loaded == null) {
+            logError("Config {} has no PriceConfig, keeping current properties", configFile);
+            return false;
+        }
+        if (loaded.equals(previous)) {
+            return false;
+        }
+
+        List<String> errors = loaded.validate();
+        if (!errors.isEmpty()) {
+            logError("Config {} is invalid, keeping current properties: {}", configFile, errors);
+            return false;
+        }
+
+        List<String> restartChanges = loaded.changesRequiringRestart(previous);
+        if (!restartChanges.isEmpty()) {
+            logError("Config {} changes {} which are applied only on restart, keeping current properties", configFile, restartChanges);
+            return false;
+        }
+
+        if (current.compareAndSet(previous, loaded)) {
+            logInfo("Config {} reloaded: {}", configFile, loaded);
+            return true;
+        }
+        return false;
+    }
+
+    private void watch() {
+        try (WatchService watchService = configFile.getFileSystem().newWatchService()) {
+            configFile.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+
+            while (!closed) {
+                WatchKey key = watchService.take();
+                boolean configChanged = key.pollEvents().stream()
+                        .anyMatch(event -> configFile.getFileName().equals(event.context()));
+                key.reset();
+
+                if (configChanged) {
+                    TimeUnit.MILLISECONDS.sleep(SETTLE_DELAY_MILLIS);
+                    // events which came during the delay are about the same change
+                    WatchKey pending = watchService.poll();
+                    if (pending != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        } catch (IOException e) {
+            logErrorWithException("Config watcher stopped", e);
+        }
+    }
+}
@@ -6,13 +6,16 @@ import org.knowm.xchange.Exchange;
 import org.knowm.xchange.ExchangeFactory;
 import org.knowm.xchange.ExchangeSpecification;
 import org.knowm.xchange.currency.CurrencyPair;
-import org.knowm.xchange.dsx.DSXExchange;
 import org.knowm.xchange.exceptions.NonceException;
 import si.mazi.rescu.HttpStatusIOException;
 import uk.dsx.ats.AtsMain;
 import uk.dsx.ats.data.Config;
 import uk.dsx.ats.data.ExchangeProperties;
 import uk.dsx.ats.data.PriceProperties;
+import uk.dsx.ats.jfr.RestCallEvent;
+import uk.dsx.ats.jfr.RetrySleepEvent;
+import uk.dsx.ats.streaming.MarketDataStream;
+import uk.dsx.ats.streaming.StreamingClient;
 
 import javax.json.Json;
 import javax.json.JsonObject;
@@ -24,7 +27,9 @@ import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.file.Paths;
 import java.security.cert.CertificateException;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Mikhail Wall
@@ -44,6 +49,9 @@ public class DSXUtils {
     public final static CurrencyPair DSX_CURRENCY_PAIR = new CurrencyPair(PRICE_PROPERTIES.getDsxCurrencyPair());
     public final static CurrencyPair EXCHANGES_CURRENCY_PAIR = new CurrencyPair(PRICE_PROPERTIES.getExchangesCurrencyPair());
 
+    // every attempt of unlimitedRepeatableRequest, retries included
+    private static final AtomicLong DSX_REQUESTS = new AtomicLong();
+
     @FunctionalInterface
     public interface ConnectorRequest<T> {
         T get() throws Exception;
@@ -51,21 +59,33 @@ public class DSXUtils {
 
     public static <T> T unlimitedRepeatableRequest(String methodName, ConnectorRequest<T> requestObject) throws Exception {
 
+        int attempt = 0;
         while (!Thread.interrupted()) {
+            RestCallEvent event = new RestCallEvent();
+            event.endpoint = methodName;
+            event.attempt = ++attempt;
+            DSX_REQUESTS.incrementAndGet();
+            event.begin();
             try {
-                return requestObject.get();
+                T result = requestObject.get();
+                commit(event, "SUCCESS", null);
+                return result;
             } catch (UnknownHostException | SocketTimeoutException | HttpStatusIOException
                     | NonceException | CertificateException | SSLHandshakeException | SocketException e) {
+                commit(event, "RETRY", e);
                 logError("Connection to " + properties.getUrl() + " disappeared, waiting 1 sec to try again", e.getMessage());
-                sleep(String.format("%s interrupted", methodName));
+                retrySleep(methodName, "connection", REQUEST_TO_DSX_TIMEOUT_SECONDS);
             } catch (Exception e) {
                 if (e.getMessage() != null && e.getMessage().contains("418")) {
+                    commit(event, "RETRY", e);
                     logErrorWithException("Cannot connect to" + properties.getUrl() + ", waiting 1 sec to try again", e);
-                    sleep(String.format("%s interrupted", methodName));
+                    retrySleep(methodName, "418", REQUEST_TO_DSX_TIMEOUT_SECONDS);
                 } else if (e.getMessage() != null && e.getMessage().contains("Exceeded limit request per minute")) {
+                    commit(event, "RETRY", e);
                     logError("Exceeded limit request per minute, waiting 1 minute");
-                    sleepWithSeconds(String.format("%s interrupted", methodName), REQUEST_TO_DSX_TIMEOUT_SECONDS_LIMIT);
+                    retrySleep(methodName, "rate limit", REQUEST_TO_DSX_TIMEOUT_SECONDS_LIMIT);
                 } else {
+                    commit(event, "ERROR", e);
                     logError("Unknown exception: " + e);
                     throw e;
                 }
@@ -74,6 +94,53 @@ public class DSXUtils {
         throw new InterruptedException(String.format("%s interrupted", methodName));
     }
 
+    /**
+     * Single attempt without retries, recorded as the same flight recorder event as attempts of unlimitedRepeatableRequest
+     */
+    public static <T> T singleRequest(String methodName, ConnectorRequest<T> requestObject) throws Exception {
+        RestCallEvent event = new RestCallEvent();
+        event.endpoint = methodName;
+        event.attempt = 1;
+        event.begin();
+        try {
+            T result = requestObject.get();
+            commit(event, "SUCCESS", null);
+            return result;
+        } catch (Exception e) {
+            commit(event, "ERROR", e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return requests made to DSX REST api through unlimitedRepeatableRequest since start
+     */
+    public static long getDsxRequestCount() {
+        return DSX_REQUESTS.get();
+    }
+
+    private static void commit(RestCallEvent event, String outcome, Exception e) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.outcome = outcome;
+            event.error = e == null ? null : e.toString();
+            event.commit();
+        }
+    }
+
+    private static void retrySleep(String methodName, String reason, int seconds) {
+        RetrySleepEvent event = new RetrySleepEvent();
+        event.begin();
+        sleepWithSeconds(String.format("%s interrupted", methodName), seconds);
+        event.end();
+        if (event.shouldCommit()) {
+            event.endpoint = methodName;
+            event.reason = reason;
+            event.plannedSeconds = seconds;
+            event.commit();
+        }
+    }
+
     public static void sleep(String interruptedMessage) {
         sleepWithSeconds(interruptedMessage, REQUEST_TO_DSX_TIMEOUT_SECONDS);
     }
@@ -87,28 +154,77 @@ public class DSXUtils {
         }
     }
     public static Exchange createExchange() throws IOException {
+        return createExchange(0);
+    }
 
-        ExchangeSpecification exSpec = new ExchangeSpecification(DSXExchange.class);
+    /**
+     * @param timeoutMillis connect and read timeout of the exchange connection, 0 to use the defaults from rescu.properties
+     */
+    public static Exchange createExchange(int timeoutMillis) throws IOException {
 
-        if (properties != null) {
-            if (properties.getSecretKey() != null && properties.getApiKey() != null) {
-                exSpec.setSecretKey(properties.getSecretKey());
-                exSpec.setApiKey(properties.getApiKey());
-            } else
-                throw new IOException("Cannot get config for api keys");
-        } else {
+        if (properties == null || properties.getSecretKey() == null || properties.getApiKey() == null)
             throw new IOException("Cannot get config for api keys");
-        }
 
-        exSpec.setSslUri(properties.getUrl());
-        Exchange exchange = ExchangeFactory.INSTANCE.createExchange(exSpec);
+        Exchange exchange = ExchangeFactory.INSTANCE.createExchange(
+                exchangeSpecification(properties.getUrl(), properties.getApiKey(), properties.getSecretKey(), timeoutMillis));
         exchange.remoteInit();
 
         return exchange;
     }
 
+    /**
+     * Exchanges created from it share one nonce factory, so several connections can use the same api key
+     */
+    static ExchangeSpecification exchangeSpecification(String url, String apiKey, String secretKey, int timeoutMillis) {
+
+        ExchangeSpecification exSpec = new ExchangeSpecification(SharedNonceDSXExchange.class);
+
+        if (timeoutMillis > 0) {
+            exSpec.setHttpConnTimeout(timeoutMillis);
+            exSpec.setHttpReadTimeout(timeoutMillis);
+        }
+
+        exSpec.setSecretKey(secretKey);
+        exSpec.setApiKey(apiKey);
+        exSpec.setSslUri(url);
+        return exSpec;
+    }
+
+    /**
+     * @return stream client for "streamUrl" (ws:// or wss:// url) from config, null if streaming is not configured
+     */
+    public static MarketDataStream createMarketDataStream() {
+        if (properties == null || properties.getStreamUrl() == null || properties.getStreamUrl().isEmpty()) {
+            return null;
+        }
+        return StreamingClient.fromAddress(properties.getStreamUrl());
+    }
+
+    public static String getConfigFile() {
+        return CONFIG_FILE;
+    }
+
+    /**
+     * Unlike the config loaded on start, errors are thrown to the caller
+     */
+    public static Config readConfig(String config) throws IOException {
+        return new ObjectMapper().readValue(new File(config), Config.class);
+    }
+
+    /**
+     * Price properties are checked by the same rules as on reload, ATS doesn't start with invalid ones
+     */
     private static Config getPropertiesFromConfig(String config) {
-        return getClassFromProperties(config, Config.class);
+        Config loaded = getClassFromProperties(config, Config.class);
+        if (loaded == null || loaded.getPriceProperties() == null)
+            throw new IllegalStateException("Cannot get PriceConfig from " + config);
+
+        List<String> errors = loaded.getPriceProperties().validate();
+        if (!errors.isEmpty()) {
+            logError("Config {} is invalid: {}", config, errors);
+            throw new IllegalStateException("Config " + config + " is invalid: " + errors);
+        }
+        return loaded;
     }
 
     private static <T> T getClassFromProperties(String config, Class<T> klass) {
@@ -0,0 +1,76 @@
+package uk.dsx.ats.utils;
+
+import java.util.Arrays;
+
+/**
+ * Reusable primitive storage for order book levels in the order the exchange sends them, queries over the levels
+ * are made on {@link PriceLevelBook} which the buffer is resynced into. Not thread safe, it is refilled in place on every read.
+ */
+public class DepthBuffer {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private double[] bidPrices = new double[INITIAL_CAPACITY];
+    private double[] bidVolumes = new double[INITIAL_CAPACITY];
+    private double[] askPrices = new double[INITIAL_CAPACITY];
+    private double[] askVolumes = new double[INITIAL_CAPACITY];
+    private int bidCount;
+    private int askCount;
+
+    public int bidCount() {
+        return bidCount;
+    }
+
+    public int askCount() {
+        return askCount;
+    }
+
+    public double bidPrice(int level) {
+        return bidPrices[level];
+    }
+
+    public double bidVolume(int level) {
+        return bidVolumes[level];
+    }
+
+    public double askPrice(int level) {
+        return askPrices[level];
+    }
+
+    public double askVolume(int level) {
+        return askVolumes[level];
+    }
+
+    public boolean hasBids() {
+        return bidCount > 0;
+    }
+
+    public double bestBidPrice() {
+        return hasBids() ? bidPrices[0] : Double.NaN;
+    }
+
+    public void clear() {
+        bidCount = 0;
+        askCount = 0;
+    }
+
+    public void addBid(double price, double volume) {
+        if (bidCount == bidPrices.length) {
+            bidPrices = Arrays.copyOf(bidPrices, bidCount * 2);
+            bidVolumes = Arrays.copyOf(bidVolumes, bidCount * 2);
+        }
+        bidPrices[bidCount] = price;
+        bidVolumes[bidCount] = volume;
+        bidCount++;
+    }
+
+    public void addAsk(double price, double volume) {
+        if (askCount == askPrices.length) {
+            askPrices = Arrays.copyOf(askPrices, askCount * 2);
+            askVolumes = Arrays.copyOf(askVolumes, askCount * 2);
+        }
+        askPrices[askCount] = price;
+        askVolumes[askCount] = volume;
+        askCount++;
+    }
+}
@@ -0,0 +1,169 @@
+package uk.dsx.ats.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dsx.DSXAdapters;
+import org.knowm.xchange.exceptions.ExchangeException;
+import si.mazi.rescu.ClientConfig;
+import si.mazi.rescu.HttpStatusIOException;
+import si.mazi.rescu.InvocationResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads DSX mapi/depth response with the streaming parser straight into {@link DepthBuffer},
+ * without building DSXOrderbook / OrderBook / LimitOrder objects.
+ * Response looks like {"btceur":{"asks":[[price,volume],...],"bids":[[price,volume],...]}}.
+ * Failures are reported with the same exceptions as the XChange client, so retries of
+ * {@link DSXUtils#unlimitedRepeatableRequest} work the same way: {@link HttpStatusIOException} for not 2xx status
+ * and {@link ExchangeException} for an error returned by DSX.
+ * Connect and read timeouts are taken from the rescu {@link ClientConfig}, as for requests of the XChange client.
+ */
+public class DepthDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String baseUrl;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    /**
+     * Timeouts are the rescu.properties defaults
+     */
+    public DepthDecoder(String baseUrl) {
+        this(baseUrl, new ClientConfig());
+    }
+
+    /**
+     * @param clientConfig config of the exchange services, e.g. {@link org.knowm.xchange.service.BaseExchangeService#getClientConfig()}
+     */
+    public DepthDecoder(String baseUrl, ClientConfig clientConfig) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.connectTimeout = clientConfig.getHttpConnTimeout();
+        this.readTimeout = clientConfig.getHttpReadTimeout();
+    }
+
+    /**
+     * @param maxLevels levels to keep for each side, 0 to keep all
+     */
+    public void read(CurrencyPair pair, String mode, int maxLevels, DepthBuffer target) throws IOException, ExchangeException {
+        String pairName = DSXAdapters.getPair(pair);
+        URL url = new URL(baseUrl + "mapi/depth/" + pairName + "?ignore_invalid=1&mode=" + mode);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestProperty("Accept", "application/json");
+        try {
+            int status = connection.getResponseCode();
+            if (status / 100 != 2) {
+                throw new HttpStatusIOException("HTTP status code was not OK: " + status + " for " + url,
+                        new InvocationResult(readBody(connection.getErrorStream()), status));
+            }
+            try (InputStream input = connection.getInputStream()) {
+                decode(input, pairName, maxLevels, target);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public static void decode(InputStream input, String pairName, int maxLevels, DepthBuffer target) throws IOException, ExchangeException {
+        target.clear();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if (pairName.equals(field) && value == JsonToken.START_OBJECT) {
+                    decodeBook(parser, maxLevels, target);
+                } else if ("error".equals(field)) {
+                    throw new ExchangeException(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void decodeBook(JsonParser parser, int maxLevels, DepthBuffer target) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (value == JsonToken.START_ARRAY && ("bids".equals(field) || "asks".equals(field))) {
+                decodeSide(parser, "bids".equals(field), maxLevels, target);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void decodeSide(JsonParser parser, boolean bids, int maxLevels, DepthBuffer target) throws IOException {
+        int levels = 0;
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+            if (maxLevels > 0 && levels >= maxLevels) {
+                parser.skipChildren();
+                continue;
+            }
+
+            parser.nextToken();
+            double price = number(parser);
+            parser.nextToken();
+            double volume = number(parser);
+
+            // anything after [price, volume] is ignored
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+            }
+
+            if (bids) {
+                target.addBid(price, volume);
+            } else {
+                target.addAsk(price, volume);
+            }
+            levels++;
+        }
+    }
+
+    private static String readBody(InputStream input) throws IOException {
+        if (input == null) {
+            return "";
+        }
+        try (InputStream in = input) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static double number(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getDoubleValue();
+        } else if (token == JsonToken.VALUE_STRING) {
+            return Double.parseDouble(parser.getText());
+        }
+        throw new IOException("Unexpected token in order book level: " + token);
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected token " + actual + ", expected " + expected);
+        }
+    }
+}
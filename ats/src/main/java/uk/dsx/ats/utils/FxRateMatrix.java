@@ -0,0 +1,156 @@
+package uk.dsx.ats.utils;
+
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * Cross rates between all traded currencies. Quoted legs are stored as they come from tickers,
+ * missing pairs are triangulated through the pivot currency. rate(from, to) is the amount of "to"
+ * currency for one unit of "from" currency. Each rate keeps the update time of its oldest leg.
+ */
+public class FxRateMatrix {
+
+    public static final int RATE_SCALE = 10;
+
+    private final List<Currency> currencies;
+    private final Map<Currency, Integer> indices = new HashMap<>();
+    private final int pivot;
+
+    private final CurrencyPair[][] quotedLegs;
+    private final BigDecimal[][] quotedRates;
+    private final BigDecimal[][] rates;
+    private final long[][] quotedTimes;
+    private final long[][] rateTimes;
+
+    public FxRateMatrix(Collection<Currency> currencies, Currency pivot) {
+        this.currencies = new ArrayList<>(new LinkedHashSet<>(currencies));
+        for (int i = 0; i < this.currencies.size(); i++) {
+            indices.put(this.currencies.get(i), i);
+        }
+        if (!indices.containsKey(pivot)) {
+            throw new IllegalArgumentException("Pivot currency " + pivot + " is not in " + this.currencies);
+        }
+        this.pivot = indices.get(pivot);
+
+        int size = this.currencies.size();
+        this.quotedLegs = new CurrencyPair[size][size];
+        this.quotedRates = new BigDecimal[size][size];
+        this.rates = new BigDecimal[size][size];
+        this.quotedTimes = new long[size][size];
+        this.rateTimes = new long[size][size];
+        for (int i = 0; i < size; i++) {
+            quotedRates[i][i] = BigDecimal.ONE;
+            rates[i][i] = BigDecimal.ONE;
+            quotedTimes[i][i] = Long.MAX_VALUE;
+            rateTimes[i][i] = Long.MAX_VALUE;
+        }
+    }
+
+    public List<Currency> getCurrencies() {
+        return Collections.unmodifiableList(currencies);
+    }
+
+    public int indexOf(Currency currency) {
+        Integer index = indices.get(currency);
+        return index == null ? -1 : index;
+    }
+
+    public BigDecimal getRate(Currency from, Currency to) {
+        int fromIndex = indexOf(from);
+        int toIndex = indexOf(to);
+        return fromIndex < 0 || toIndex < 0 ? null : getRate(fromIndex, toIndex);
+    }
+
+    public synchronized BigDecimal getRate(int from, int to) {
+        return rates[from][to];
+    }
+
+    /**
+     * @param notBefore time in milliseconds, the rate is not returned if any of its legs was updated earlier
+     * @return rate or null if it's unknown or stale
+     */
+    public BigDecimal getRate(Currency from, Currency to, long notBefore) {
+        int fromIndex = indexOf(from);
+        int toIndex = indexOf(to);
+        return fromIndex < 0 || toIndex < 0 ? null : getRate(fromIndex, toIndex, notBefore);
+    }
+
+    public synchronized BigDecimal getRate(int from, int to, long notBefore) {
+        return rateTimes[from][to] < notBefore ? null : rates[from][to];
+    }
+
+    /**
+     * Quoted pairs which the rate from -> to is made of: the direct leg if it is quoted, otherwise both pivot legs
+     */
+    public synchronized List<CurrencyPair> legsFor(Currency from, Currency to) {
+        int fromIndex = indexOf(from);
+        int toIndex = indexOf(to);
+        if (fromIndex < 0 || toIndex < 0 || fromIndex == toIndex) {
+            return Collections.emptyList();
+        }
+        if (quotedLegs[fromIndex][toIndex] != null) {
+            return Collections.singletonList(quotedLegs[fromIndex][toIndex]);
+        }
+
+        List<CurrencyPair> legs = new ArrayList<>(2);
+        if (quotedLegs[fromIndex][pivot] != null) {
+            legs.add(quotedLegs[fromIndex][pivot]);
+        }
+        if (quotedLegs[pivot][toIndex] != null) {
+            legs.add(quotedLegs[pivot][toIndex]);
+        }
+        return legs;
+    }
+
+    /**
+     * Applies a new price of the quoted pair and recalculates only the rates depending on it
+     *
+     * @param time time in milliseconds when the price was received
+     */
+    public synchronized void updateRate(CurrencyPair pair, BigDecimal price, long time) {
+        int base = indexOf(pair.base);
+        int counter = indexOf(pair.counter);
+        if (base < 0 || counter < 0 || base == counter || price == null || price.signum() <= 0) {
+            return;
+        }
+
+        quotedLegs[base][counter] = pair;
+        quotedLegs[counter][base] = pair;
+        quotedRates[base][counter] = price;
+        quotedRates[counter][base] = BigDecimal.ONE.divide(price, RATE_SCALE, RoundingMode.HALF_EVEN);
+        quotedTimes[base][counter] = time;
+        quotedTimes[counter][base] = time;
+
+        if (base == pivot || counter == pivot) {
+            int other = base == pivot ? counter : base;
+            for (int i = 0; i < currencies.size(); i++) {
+                resolve(other, i);
+                resolve(i, other);
+            }
+        } else {
+            resolve(base, counter);
+            resolve(counter, base);
+        }
+    }
+
+    private void resolve(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        if (quotedRates[from][to] != null) {
+            rates[from][to] = quotedRates[from][to];
+            rateTimes[from][to] = quotedTimes[from][to];
+        } else if (quotedRates[from][pivot] != null && quotedRates[pivot][to] != null) {
+            rates[from][to] = quotedRates[from][pivot].multiply(quotedRates[pivot][to])
+                    .setScale(RATE_SCALE, RoundingMode.HALF_EVEN);
+            rateTimes[from][to] = Math.min(quotedTimes[from][pivot], quotedTimes[pivot][to]);
+        } else {
+            rates[from][to] = null;
+            rateTimes[from][to] = 0;
+        }
+    }
+}
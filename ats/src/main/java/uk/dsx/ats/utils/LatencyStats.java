@@ -0,0 +1,44 @@
+package uk.dsx.ats.utils;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the last requests, percentiles are taken over them only, so they follow changes of the venue
+ */
+public class LatencyStats {
+
+    private final long[] samples;
+    private int count;
+    private int next;
+
+    /**
+     * @param size number of last requests to keep
+     */
+    public LatencyStats(int size) {
+        this.samples = new long[size];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @param part e.g. 0.95 for p95
+     * @return latency which that part of requests did not exceed, -1 if nothing was recorded
+     */
+    public synchronized long percentile(double part) {
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(part * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+}
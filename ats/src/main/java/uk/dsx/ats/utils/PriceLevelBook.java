@@ -0,0 +1,312 @@
+package uk.dsx.ats.utils;
+
+import org.knowm.xchange.dto.Order;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Local mirror of the order book kept as sorted primitive price levels (bids descending, asks ascending).
+ * Levels are changed in place by deltas, a full snapshot is diffed against the current levels,
+ * so listeners are notified only about levels which were really touched.
+ */
+public class PriceLevelBook {
+
+    public static final int DEFAULT_DEPTH = 64;
+
+    /**
+     * Called under the book lock, so a reader synchronized on the book sees levels and notifications consistently
+     */
+    public interface ChangeListener {
+        /**
+         * @param volume new volume of the level, 0 if the level was deleted
+         */
+        void onLevelChanged(Order.OrderType side, double price, double volume);
+    }
+
+    private final Levels bids;
+    private final Levels asks;
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long lastUpdateTime;
+
+    public PriceLevelBook() {
+        this(DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param depth levels of each side to allocate up front, the book grows beyond that when needed
+     */
+    public PriceLevelBook(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth should be positive, got " + depth);
+        }
+        this.bids = new Levels(Order.OrderType.BID, depth);
+        this.asks = new Levels(Order.OrderType.ASK, depth);
+    }
+
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Inserts, modifies or deletes (volume == 0) the price level
+     */
+    public synchronized void apply(Order.OrderType side, double price, double volume) {
+        lastUpdateTime = System.currentTimeMillis();
+        Levels levels = levels(side);
+        boolean changed = volume > 0 ? levels.set(price, volume) : levels.delete(price);
+        if (changed) {
+            notifyListeners(side, price, Math.max(volume, 0));
+        }
+    }
+
+    /**
+     * Replaces the levels with the snapshot ones, the buffer is only read
+     */
+    public synchronized void resync(DepthBuffer snapshot) {
+        lastUpdateTime = System.currentTimeMillis();
+
+        bids.startSpare(snapshot.bidCount());
+        for (int i = 0; i < snapshot.bidCount(); i++) {
+            bids.addSpare(snapshot.bidPrice(i), snapshot.bidVolume(i));
+        }
+        resync(bids);
+
+        asks.startSpare(snapshot.askCount());
+        for (int i = 0; i < snapshot.askCount(); i++) {
+            asks.addSpare(snapshot.askPrice(i), snapshot.askVolume(i));
+        }
+        resync(asks);
+    }
+
+    /**
+     * Time in milliseconds when a level or a snapshot was applied last, whether it changed the book or not
+     */
+    public long getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    public synchronized int bidLevels() {
+        return bids.size;
+    }
+
+    public synchronized double bidPrice(int level) {
+        return level < bids.size ? bids.prices[level] : Double.NaN;
+    }
+
+    public synchronized double bidVolume(int level) {
+        return level < bids.size ? bids.volumes[level] : Double.NaN;
+    }
+
+    public synchronized double askPrice(int level) {
+        return level < asks.size ? asks.prices[level] : Double.NaN;
+    }
+
+    public synchronized double askVolume(int level) {
+        return level < asks.size ? asks.volumes[level] : Double.NaN;
+    }
+
+    public double bestBidPrice() {
+        return bidPrice(0);
+    }
+
+    public synchronized double bidVolumeAbove(double price) {
+        double volume = 0;
+        for (int i = 0; i < bids.size && bids.prices[i] > price; i++) {
+            volume += bids.volumes[i];
+        }
+        return volume;
+    }
+
+    public synchronized double bidPriceAfter(double price) {
+        for (int i = 0; i < bids.size; i++) {
+            if (bids.prices[i] < price) {
+                return bids.prices[i];
+            }
+        }
+        return Double.NaN;
+    }
+
+    private void resync(Levels levels) {
+        levels.sortSpare();
+        levels.mergeSpare();
+
+        // both arrays are sorted in the same order, so the diff is a single merge pass
+        int i = 0;
+        int j = 0;
+        while (i < levels.size || j < levels.spareSize) {
+            if (j >= levels.spareSize || (i < levels.size && levels.before(levels.prices[i], levels.sparePrices[j]))) {
+                notifyListeners(levels.side, levels.prices[i++], 0);
+            } else if (i >= levels.size || levels.before(levels.sparePrices[j], levels.prices[i])) {
+                notifyListeners(levels.side, levels.sparePrices[j], levels.spareVolumes[j]);
+                j++;
+            } else {
+                if (levels.volumes[i] != levels.spareVolumes[j]) {
+                    notifyListeners(levels.side, levels.sparePrices[j], levels.spareVolumes[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+
+        levels.swap();
+    }
+
+    private void notifyListeners(Order.OrderType side, double price, double volume) {
+        for (ChangeListener listener : listeners) {
+            listener.onLevelChanged(side, price, volume);
+        }
+    }
+
+    private Levels levels(Order.OrderType side) {
+        return side == Order.OrderType.BID ? bids : asks;
+    }
+
+    private static class Levels {
+
+        final Order.OrderType side;
+
+        double[] prices;
+        double[] volumes;
+        int size;
+
+        // snapshot is loaded here first, then the buffers are swapped
+        double[] sparePrices;
+        double[] spareVolumes;
+        int spareSize;
+
+        Levels(Order.OrderType side, int depth) {
+            this.side = side;
+            this.prices = new double[depth];
+            this.volumes = new double[depth];
+            this.sparePrices = new double[depth];
+            this.spareVolumes = new double[depth];
+        }
+
+        /**
+         * True if level with price a stands in the book before level with price b
+         */
+        boolean before(double a, double b) {
+            return side == Order.OrderType.BID ? a > b : a < b;
+        }
+
+        /**
+         * Index of the level, or -(insertion point) - 1 if there is no such level
+         */
+        int find(double price) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (prices[middle] == price) {
+                    return middle;
+                } else if (before(prices[middle], price)) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return -(low + 1);
+        }
+
+        boolean set(double price, double volume) {
+            int index = find(price);
+            if (index >= 0) {
+                if (volumes[index] == volume) {
+                    return false;
+                }
+                volumes[index] = volume;
+                return true;
+            }
+
+            index = -index - 1;
+            if (size == prices.length) {
+                prices = Arrays.copyOf(prices, Math.max(1, size * 2));
+                volumes = Arrays.copyOf(volumes, Math.max(1, size * 2));
+            }
+            System.arraycopy(prices, index, prices, index + 1, size - index);
+            System.arraycopy(volumes, index, volumes, index + 1, size - index);
+            prices[index] = price;
+            volumes[index] = volume;
+            size++;
+            return true;
+        }
+
+        boolean delete(double price) {
+            int index = find(price);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(prices, index + 1, prices, index, size - index - 1);
+            System.arraycopy(volumes, index + 1, volumes, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        void startSpare(int levels) {
+            if (sparePrices.length < levels) {
+                sparePrices = new double[levels];
+                spareVolumes = new double[levels];
+            }
+            spareSize = 0;
+        }
+
+        /**
+         * Levels may come in any order, they are sorted and levels of the same price are merged before the swap
+         */
+        void addSpare(double price, double volume) {
+            sparePrices[spareSize] = price;
+            spareVolumes[spareSize] = volume;
+            spareSize++;
+        }
+
+        /**
+         * Insertion sort, snapshots are almost always sorted already, so it's a single pass then
+         */
+        void sortSpare() {
+            for (int i = 1; i < spareSize; i++) {
+                double price = sparePrices[i];
+                double volume = spareVolumes[i];
+                int j = i - 1;
+                while (j >= 0 && before(price, sparePrices[j])) {
+                    sparePrices[j + 1] = sparePrices[j];
+                    spareVolumes[j + 1] = spareVolumes[j];
+                    j--;
+                }
+                sparePrices[j + 1] = price;
+                spareVolumes[j + 1] = volume;
+            }
+        }
+
+        void mergeSpare() {
+            int merged = 0;
+            for (int i = 0; i < spareSize; i++) {
+                if (merged > 0 && sparePrices[merged - 1] == sparePrices[i]) {
+                    spareVolumes[merged - 1] += spareVolumes[i];
+                } else {
+                    sparePrices[merged] = sparePrices[i];
+                    spareVolumes[merged] = spareVolumes[i];
+                    merged++;
+                }
+            }
+            spareSize = merged;
+        }
+
+        void swap() {
+            double[] swapPrices = prices;
+            double[] swapVolumes = volumes;
+            prices = sparePrices;
+            volumes = spareVolumes;
+            size = spareSize;
+            sparePrices = swapPrices;
+            spareVolumes = swapVolumes;
+            spareSize = 0;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package uk.dsx.ats.utils;
+
+import org.knowm.xchange.dsx.DSXExchange;
+import org.knowm.xchange.utils.nonce.AtomicLongCurrentTimeIncrementalNonceFactory;
+import si.mazi.rescu.SynchronizedValueFactory;
+
+/**
+ * DSX exchange taking nonces from one factory for all connections. The main connection and the stale data
+ * watchdog one use the same api key, with a factory each the nonce of one would fall behind the other's.
+ */
+public class SharedNonceDSXExchange extends DSXExchange {
+
+    private static final SynchronizedValueFactory<Long> NONCE_FACTORY = new AtomicLongCurrentTimeIncrementalNonceFactory();
+
+    @Override
+    public SynchronizedValueFactory<Long> getNonceFactory() {
+        return NONCE_FACTORY;
+    }
+}
@@ -0,0 +1,60 @@
+package uk.dsx.ats.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free sum of values over the last window, kept in a ring of time buckets.
+ * Each bucket is a single long: bucket number in the high 24 bits and value in the low 40 bits,
+ * so rolling a bucket over and adding to it is one CAS.
+ */
+public class SlidingWindowCounter {
+
+    private static final int VALUE_BITS = 40;
+    private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+    private static final long TAG_MASK = (1L << (Long.SIZE - VALUE_BITS)) - 1;
+
+    public static final long MAX_VALUE = VALUE_MASK;
+
+    private final long bucketMillis;
+    private final int buckets;
+    private final AtomicLongArray ring;
+
+    public SlidingWindowCounter(long windowMillis, int buckets) {
+        this.buckets = buckets;
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        this.ring = new AtomicLongArray(buckets);
+    }
+
+    /**
+     * Adds the value (may be negative to take it back) to the bucket of the given time
+     *
+     * @return sum over the window ending at that time, including the value
+     */
+    public long add(long timeMillis, long value) {
+        long bucket = timeMillis / bucketMillis;
+        int index = (int) (bucket % buckets);
+        long tag = bucket & TAG_MASK;
+
+        while (true) {
+            long current = ring.get(index);
+            long currentValue = (current >>> VALUE_BITS) == tag ? current & VALUE_MASK : 0;
+            long newValue = Math.max(0, Math.min(MAX_VALUE, currentValue + value));
+            if (ring.compareAndSet(index, current, (tag << VALUE_BITS) | newValue)) {
+                break;
+            }
+        }
+        return sum(timeMillis);
+    }
+
+    public long sum(long timeMillis) {
+        long bucket = timeMillis / bucketMillis;
+        long sum = 0;
+        for (int i = 0; i < buckets; i++) {
+            long current = ring.get((int) ((bucket - i) % buckets));
+            if ((current >>> VALUE_BITS) == ((bucket - i) & TAG_MASK)) {
+                sum += current & VALUE_MASK;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,26 @@
+package uk.dsx.ats.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time source of the algorithm. Live trading uses the system clock, simulations pass a virtual one,
+ * so waiting between checks costs no real time.
+ */
+public interface TradingClock {
+
+    TradingClock SYSTEM = new TradingClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void sleep(long millis) throws InterruptedException {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+    };
+
+    long currentTimeMillis();
+
+    void sleep(long millis) throws InterruptedException;
+}
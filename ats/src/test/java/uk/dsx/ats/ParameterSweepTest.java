@@ -0,0 +1,43 @@
+package uk.dsx.ats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import uk.dsx.ats.data.SweepProperties;
+import uk.dsx.ats.simulation.SimulatedMarket;
+import uk.dsx.ats.simulation.SweepResult;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static uk.dsx.ats.utils.DSXUtils.DSX_CURRENCY_PAIR;
+import static uk.dsx.ats.utils.DSXUtils.PRICE_PROPERTIES;
+
+public class ParameterSweepTest {
+
+    @Test
+    public void runOnSyntheticMarketDoesNotFail() throws IOException {
+        SweepProperties sweep = new ObjectMapper().readValue("{\"syntheticMarket\": {\"ticks\": 600}}", SweepProperties.class);
+        SimulatedMarket market = SimulatedMarket.synthetic(DSX_CURRENCY_PAIR, sweep.getSyntheticMarket(), 5, 4);
+        Map<String, BigDecimal> combination = Collections.singletonMap("stepToMove", new BigDecimal("1"));
+
+        SweepResult result = ParameterSweep.run(sweep, market, combination);
+
+        assertNotEquals("FAILED", result.getOutcome());
+    }
+
+    @Test
+    public void replacesSweptProperties() {
+        Map<String, BigDecimal> combination = Collections.singletonMap("maxPrice", new BigDecimal("12345"));
+
+        assertEquals(new BigDecimal("12345"), ParameterSweep.withValues(PRICE_PROPERTIES, combination).getMaxPrice());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownProperty() {
+        ParameterSweep.withValues(PRICE_PROPERTIES, Collections.singletonMap("unknown", BigDecimal.ONE));
+    }
+}
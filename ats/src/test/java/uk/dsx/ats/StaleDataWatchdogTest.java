@@ -0,0 +1,107 @@
+package uk.dsx.ats;
+
+import org.junit.After;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import uk.dsx.ats.data.PriceProperties;
+import uk.dsx.ats.repositories.TradeRepository;
+import uk.dsx.ats.risk.PreTradeRiskGate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StaleDataWatchdogTest {
+
+    private static final long MAX_DATA_AGE = 200L;
+    // several checks of the watchdog, they run every 500 ms
+    private static final long CHECKS = 1600L;
+
+    private final CountingTradeRepository cancelRepository = new CountingTradeRepository();
+
+    private StaleDataWatchdog watchdog;
+
+    @After
+    public void tearDown() {
+        watchdog.close();
+    }
+
+    @Test
+    public void staleInputWithRestingOrderCancelsOnce() throws Exception {
+        watchdog = new StaleDataWatchdog(cancelRepository, MAX_DATA_AGE, 60_000);
+        touchAll();
+        watchdog.onOrderPlaced("1", CurrencyPair.BTC_EUR, BigDecimal.ONE, new BigDecimal("7000"));
+        watchdog.start();
+
+        Thread.sleep(CHECKS);
+
+        assertEquals(1, cancelRepository.cancels.get());
+    }
+
+    @Test
+    public void staleInputWithoutRestingOrdersCancelsNothing() throws Exception {
+        watchdog = new StaleDataWatchdog(cancelRepository, MAX_DATA_AGE, 60_000);
+        watchdog.start();
+
+        Thread.sleep(CHECKS);
+
+        assertEquals(0, cancelRepository.cancels.get());
+    }
+
+    @Test
+    public void connectionIsWarmedUpWhileOrdersAreResting() throws Exception {
+        watchdog = new StaleDataWatchdog(cancelRepository, 60_000, 400);
+        touchAll();
+        watchdog.start();
+        assertEquals(1, cancelRepository.warmUps.get());
+
+        Thread.sleep(CHECKS);
+        assertEquals(1, cancelRepository.warmUps.get());
+
+        watchdog.onOrderPlaced("1", CurrencyPair.BTC_EUR, BigDecimal.ONE, new BigDecimal("7000"));
+        Thread.sleep(CHECKS);
+
+        assertTrue(String.valueOf(cancelRepository.warmUps.get()), cancelRepository.warmUps.get() >= 3);
+        assertEquals(0, cancelRepository.cancels.get());
+    }
+
+    private void touchAll() {
+        for (StaleDataWatchdog.Input input : StaleDataWatchdog.Input.values()) {
+            watchdog.touch(input);
+        }
+    }
+
+    /**
+     * Notifies listeners like the real cancel does, so the watchdog sees the orders gone
+     */
+    private static class CountingTradeRepository extends TradeRepository {
+
+        final List<OrderListener> listeners = new CopyOnWriteArrayList<>();
+        final AtomicInteger cancels = new AtomicInteger();
+        final AtomicInteger warmUps = new AtomicInteger();
+
+        CountingTradeRepository() {
+            super(null, new PreTradeRiskGate(PriceProperties::new));
+        }
+
+        @Override
+        public void addOrderListener(OrderListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void cancelAllOrdersOnce() {
+            cancels.incrementAndGet();
+            listeners.forEach(OrderListener::onAllOrdersCancelled);
+        }
+
+        @Override
+        public void warmUp() {
+            warmUps.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package uk.dsx.ats.data;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PricePropertiesTest {
+
+    @Test
+    public void defaultsAreValid() {
+        assertTrue(new PriceProperties().validate().isEmpty());
+    }
+
+    @Test
+    public void shippedConfigIsValid() throws IOException {
+        Config config = new ObjectMapper().readValue(new File("config.json"), Config.class);
+
+        assertTrue(config.getPriceProperties().validate().toString(), config.getPriceProperties().validate().isEmpty());
+    }
+
+    @Test
+    public void reportsEveryInvalidTime() {
+        PriceProperties properties = new PriceProperties();
+        properties.timestampForPriceUpdate = 0;
+        properties.balanceReconcileTime = -1;
+        properties.streamFreshnessTime = 0;
+        properties.watchdogTimeout = -5000;
+
+        List<String> errors = properties.validate();
+
+        assertEquals(Arrays.asList(
+                "timestampForPriceUpdate should be positive, got 0",
+                "balanceReconcileTime should be positive, got -1",
+                "streamFreshnessTime should be positive, got 0",
+                "watchdogTimeout should be positive, got -5000"), errors);
+    }
+
+    @Test
+    public void reportsMissingAndNegativeAmounts() {
+        PriceProperties properties = new PriceProperties();
+        properties.maxPrice = null;
+        properties.stepToMove = new BigDecimal("-0.01");
+
+        List<String> errors = properties.validate();
+
+        assertEquals(Arrays.asList(
+                "stepToMove should not be negative, got -0.01",
+                "maxPrice should be positive, got null"), errors);
+    }
+
+    @Test
+    public void maxDataAgeCoversSlowestOrderCheck() {
+        PriceProperties properties = new PriceProperties();
+        properties.waitingTimeForOrderCheck = 5;
+        properties.maxIntervalMultiplier = new BigDecimal("4");
+        properties.maxDataAge = 20000;
+
+        assertEquals(Collections.singletonList(
+                "maxDataAge should be bigger than waitingTimeForOrderCheck * 1000 * maxIntervalMultiplier (20000 ms), got 20000"),
+                properties.validate());
+
+        properties.maxDataAge = 20001;
+        assertTrue(properties.validate().isEmpty());
+    }
+}
@@ -0,0 +1,104 @@
+package uk.dsx.ats.repositories;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.account.AccountInfo;
+import org.knowm.xchange.dto.account.Wallet;
+import org.knowm.xchange.service.account.AccountService;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+
+public class AccountRepositoryTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicReference<Wallet> wallet = new AtomicReference<>(BalanceLedgerTest.wallet("1000", "0", "0"));
+
+    private BalanceLedger ledger;
+    private AccountRepository repository;
+
+    @Before
+    public void setUp() {
+        AccountService accountService = (AccountService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{AccountService.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("getAccountInfo")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    requests.incrementAndGet();
+                    return new AccountInfo(wallet.get());
+                });
+        ledger = new BalanceLedger();
+        repository = new AccountRepository(accountService, Currency.EUR, ledger, 60_000L);
+    }
+
+    @Test
+    public void balanceIsRequestedOnlyForReconcile() throws Exception {
+        assertAvailable("1000");
+        assertEquals(1, requests.get());
+
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+
+        assertAvailable("800");
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void fillBeforeCancelIsPickedUpByReconcile() throws Exception {
+        assertAvailable("1000");
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+        // filled between the last status request and the cancel, the ledger has not seen it
+        wallet.set(BalanceLedgerTest.wallet("800", "0", "2"));
+
+        ledger.onOrderCancelled("1");
+
+        assertAvailable("800");
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void fillBeforeCancelAllIsPickedUpByReconcile() throws Exception {
+        assertAvailable("1000");
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+        wallet.set(BalanceLedgerTest.wallet("900", "0", "1"));
+
+        ledger.onAllOrdersCancelled();
+
+        assertAvailable("900");
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void cancelWithoutRestingOrdersNeedsNoReconcile() throws Exception {
+        assertAvailable("1000");
+
+        ledger.onAllOrdersCancelled();
+        ledger.onOrderCancelled("1");
+
+        assertAvailable("1000");
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void driftIsCorrectedWhenLedgerIsOutOfSync() throws Exception {
+        assertAvailable("1000");
+        // e.g. deposit or trade made outside of ATS
+        wallet.set(BalanceLedgerTest.wallet("1200", "0", "0"));
+        assertAvailable("1000");
+
+        ledger.markOutOfSync();
+
+        assertAvailable("1200");
+        assertEquals(2, requests.get());
+    }
+
+    private void assertAvailable(String expected) throws Exception {
+        BigDecimal available = repository.getBalance().getAvailable();
+        assertEquals("available was " + available, 0, new BigDecimal(expected).compareTo(available));
+    }
+}
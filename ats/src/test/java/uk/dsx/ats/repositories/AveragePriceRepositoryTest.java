@@ -0,0 +1,259 @@
+package uk.dsx.ats.repositories;
+
+import org.junit.After;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.marketdata.Trades;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.service.account.AccountService;
+import org.knowm.xchange.service.marketdata.MarketDataService;
+import org.knowm.xchange.service.trade.TradeService;
+import si.mazi.rescu.SynchronizedValueFactory;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AveragePriceRepositoryTest {
+
+    private static final int SCALE = 2;
+    // reference exchanges are requested again after the rate limit of rateLimit.json, 3 seconds
+    private static final long UPDATE_DELAY = 3000L;
+
+    private AveragePriceRepository repository;
+
+    @After
+    public void tearDown() {
+        repository.close();
+        StubExchange.SERVICES.clear();
+    }
+
+    @Test
+    public void slowRequestIsHedgedAfterHedgeDelay() throws Exception {
+        StubService kraken = service("Kraken", call -> call == 1 ? slow(100, 2000) : price(101));
+        repository = repository(100, 6, 5000, new Kraken());
+
+        long start = System.currentTimeMillis();
+        BigDecimal average = repository.getAveragePrice();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(0, new BigDecimal("101").compareTo(average));
+        assertEquals(2, kraken.calls.get());
+        assertTrue("hedged after " + elapsed + " ms", elapsed >= 100 && elapsed < 1500);
+    }
+
+    @Test
+    public void fastRequestIsNotHedged() throws Exception {
+        StubService kraken = service("Kraken", call -> price(100));
+        repository = repository(200, 6, 5000, new Kraken());
+
+        assertEquals(0, new BigDecimal("100").compareTo(repository.getAveragePrice()));
+        Thread.sleep(300);
+
+        assertEquals(1, kraken.calls.get());
+    }
+
+    @Test
+    public void nothingIsSentWhenHedgeBudgetIsSpent() throws Exception {
+        StubService kraken = service("Kraken", call -> slow(100, 300));
+        repository = repository(50, 0, 5000, new Kraken());
+
+        long start = System.currentTimeMillis();
+        BigDecimal average = repository.getAveragePrice();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(0, new BigDecimal("100").compareTo(average));
+        assertEquals(1, kraken.calls.get());
+        assertEquals(0, kraken.tickerCalls.get());
+        assertTrue("answered after " + elapsed + " ms", elapsed >= 300);
+    }
+
+    @Test
+    public void lateExchangeIsAveragedWithItsLastPrice() throws Exception {
+        service("Kraken", call -> price(call == 1 ? 100 : 110));
+        service("Bitstamp", call -> call == 1 ? price(200) : slow(300, 2000));
+        repository = repository(5000, 0, 300, new Kraken(), new Bitstamp());
+
+        assertEquals(0, new BigDecimal("150").compareTo(repository.getAveragePrice()));
+        Thread.sleep(UPDATE_DELAY + 100);
+
+        long start = System.currentTimeMillis();
+        BigDecimal average = repository.getAveragePrice();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(0, new BigDecimal("155").compareTo(average));
+        assertTrue("answered after " + elapsed + " ms", elapsed < 1500);
+    }
+
+    @Test
+    public void closeStopsRequestThreads() throws Exception {
+        service("Kraken", call -> slow(100, 10_000));
+        repository = repository(50, 6, 200, new Kraken());
+
+        repository.getAveragePrice();
+        assertTrue(requestThreads() > 0);
+
+        repository.close();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requestThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, requestThreads());
+    }
+
+    private static long requestThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("reference-price") && thread.isAlive())
+                .count();
+    }
+
+    private static AveragePriceRepository repository(long hedgeDelay, int maxHedgesPerMinute, long referenceTimeout, Exchange... exchanges) {
+        return new AveragePriceRepository(Arrays.asList(exchanges), CurrencyPair.BTC_USD, SCALE,
+                hedgeDelay, maxHedgesPerMinute, referenceTimeout);
+    }
+
+    private static StubService service(String exchangeName, Answer answer) {
+        StubService service = new StubService(answer);
+        StubExchange.SERVICES.put(exchangeName, service);
+        return service;
+    }
+
+    private static BigDecimal price(long price) {
+        return BigDecimal.valueOf(price);
+    }
+
+    private static BigDecimal slow(long price, long delay) throws InterruptedException {
+        Thread.sleep(delay);
+        return BigDecimal.valueOf(price);
+    }
+
+    @FunctionalInterface
+    private interface Answer {
+        BigDecimal get(int call) throws Exception;
+    }
+
+    private static class StubService implements MarketDataService {
+
+        final Answer answer;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger tickerCalls = new AtomicInteger();
+
+        StubService(Answer answer) {
+            this.answer = answer;
+        }
+
+        @Override
+        public OrderBook getOrderBook(CurrencyPair pair, Object... args) {
+            try {
+                BigDecimal price = answer.get(calls.incrementAndGet());
+                List<LimitOrder> bids = Collections.singletonList(
+                        new LimitOrder(Order.OrderType.BID, BigDecimal.ONE, pair, "", null, price));
+                return new OrderBook(new Date(), Collections.emptyList(), bids);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Ticker getTicker(CurrencyPair pair, Object... args) {
+            tickerCalls.incrementAndGet();
+            return new Ticker.Builder().currencyPair(pair).bid(BigDecimal.ONE).build();
+        }
+
+        @Override
+        public Trades getTrades(CurrencyPair pair, Object... args) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Exchanges are created again by class name, so services are looked up by the exchange name
+     */
+    public abstract static class StubExchange implements Exchange {
+
+        static final Map<String, MarketDataService> SERVICES = new ConcurrentHashMap<>();
+
+        private final String name;
+
+        StubExchange(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public ExchangeSpecification getDefaultExchangeSpecification() {
+            ExchangeSpecification specification = new ExchangeSpecification(getClass());
+            specification.setExchangeName(name);
+            return specification;
+        }
+
+        @Override
+        public ExchangeSpecification getExchangeSpecification() {
+            return getDefaultExchangeSpecification();
+        }
+
+        @Override
+        public MarketDataService getMarketDataService() {
+            return SERVICES.get(name);
+        }
+
+        @Override
+        public void applySpecification(ExchangeSpecification specification) {
+        }
+
+        @Override
+        public ExchangeMetaData getExchangeMetaData() {
+            return null;
+        }
+
+        @Override
+        public List<CurrencyPair> getExchangeSymbols() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public SynchronizedValueFactory<Long> getNonceFactory() {
+            return null;
+        }
+
+        @Override
+        public TradeService getTradeService() {
+            return null;
+        }
+
+        @Override
+        public AccountService getAccountService() {
+            return null;
+        }
+
+        @Override
+        public void remoteInit() {
+        }
+    }
+
+    public static class Kraken extends StubExchange {
+        public Kraken() {
+            super("Kraken");
+        }
+    }
+
+    public static class Bitstamp extends StubExchange {
+        public Bitstamp() {
+            super("Bitstamp");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package uk.dsx.ats.repositories;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dsx.dto.trade.DSXOrderStatusResult;
+import org.knowm.xchange.dto.account.Balance;
+import org.knowm.xchange.dto.account.Wallet;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BalanceLedgerTest {
+
+    private static final long NEVER = Long.MAX_VALUE / 2;
+
+    private BalanceLedger ledger;
+
+    @Before
+    public void setUp() {
+        ledger = new BalanceLedger();
+        ledger.reconcile(wallet("1000", "0", "0"));
+    }
+
+    @Test
+    public void placedOrderReservesFunds() {
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+
+        assertFunds(Currency.EUR, "800", "200");
+        assertFalse(ledger.needReconcile(NEVER));
+    }
+
+    @Test
+    public void fillSpendsReservedFunds() {
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+
+        ledger.onOrderStatus("1", status("0", 1));
+
+        assertFunds(Currency.EUR, "800", "0");
+        assertFunds(Currency.BTC, "2", "0");
+    }
+
+    @Test
+    public void partialFillKeepsRestReserved() {
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+
+        ledger.onOrderStatus("1", status("1.5", 0));
+        assertFunds(Currency.EUR, "800", "150");
+        assertFunds(Currency.BTC, "0.5", "0");
+
+        // the same status again changes nothing
+        ledger.onOrderStatus("1", status("1.5", 0));
+        assertFunds(Currency.EUR, "800", "150");
+        assertFunds(Currency.BTC, "0.5", "0");
+    }
+
+    @Test
+    public void cancelReleasesRemainingReserve() {
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+        ledger.onOrderStatus("1", status("1.5", 0));
+
+        ledger.onOrderCancelled("1");
+
+        assertFunds(Currency.EUR, "950", "0");
+        assertFunds(Currency.BTC, "0.5", "0");
+
+        // late status of the cancelled order is ignored
+        ledger.onOrderStatus("1", status("0", 1));
+        assertFunds(Currency.EUR, "950", "0");
+        assertTrue(ledger.needReconcile(NEVER));
+    }
+
+    @Test
+    public void cancelAllReleasesEveryReserve() {
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("1"), new BigDecimal("100"));
+        ledger.onOrderPlaced("2", CurrencyPair.BTC_EUR, new BigDecimal("1"), new BigDecimal("200"));
+        assertFunds(Currency.EUR, "700", "300");
+
+        ledger.onAllOrdersCancelled();
+
+        assertFunds(Currency.EUR, "1000", "0");
+        assertTrue(ledger.needReconcile(NEVER));
+    }
+
+    @Test
+    public void filledOrderNeedsNoReconcile() {
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+
+        ledger.onOrderStatus("1", status("0", 1));
+        ledger.onAllOrdersCancelled();
+
+        assertFalse(ledger.needReconcile(NEVER));
+    }
+
+    @Test
+    public void overspendingMarksLedgerOutOfSync() {
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("20"), new BigDecimal("100"));
+
+        assertTrue(ledger.needReconcile(NEVER));
+    }
+
+    @Test
+    public void growingRemainingVolumeMarksLedgerOutOfSync() {
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+
+        ledger.onOrderStatus("1", status("3", 0));
+
+        assertTrue(ledger.needReconcile(NEVER));
+    }
+
+    @Test
+    public void reconcileCorrectsDrift() {
+        ledger.onOrderPlaced("1", CurrencyPair.BTC_EUR, new BigDecimal("2"), new BigDecimal("100"));
+        ledger.onOrderStatus("1", status("0", 1));
+        assertFunds(Currency.EUR, "800", "0");
+
+        // exchange charged a fee which the ledger doesn't project
+        ledger.reconcile(wallet("799.6", "0", "2"));
+
+        assertFunds(Currency.EUR, "799.6", "0");
+        assertFunds(Currency.BTC, "2", "0");
+        assertFalse(ledger.needReconcile(NEVER));
+    }
+
+    @Test
+    public void reconcileIsNeededAfterDelay() {
+        assertFalse(ledger.needReconcile(NEVER));
+        assertTrue(ledger.needReconcile(-1));
+
+        ledger.markOutOfSync();
+
+        assertTrue(ledger.needReconcile(NEVER));
+    }
+
+    static Wallet wallet(String availableEur, String frozenEur, String btc) {
+        BigDecimal available = new BigDecimal(availableEur);
+        BigDecimal frozen = new BigDecimal(frozenEur);
+        return new Wallet(new Balance(Currency.EUR, available.add(frozen), available, frozen),
+                new Balance(Currency.BTC, new BigDecimal(btc)));
+    }
+
+    private static DSXOrderStatusResult status(String remainingVolume, int status) {
+        return new DSXOrderStatusResult("btceur", "buy", new BigDecimal(remainingVolume), new BigDecimal("2"),
+                new BigDecimal("100"), 0L, status, null, null);
+    }
+
+    private void assertFunds(Currency currency, String available, String reserved) {
+        Balance balance = ledger.getBalance(currency);
+        assertEquals(currency + " available was " + balance.getAvailable(), 0, new BigDecimal(available).compareTo(balance.getAvailable()));
+        assertEquals(currency + " reserved was " + balance.getFrozen(), 0, new BigDecimal(reserved).compareTo(balance.getFrozen()));
+    }
+}
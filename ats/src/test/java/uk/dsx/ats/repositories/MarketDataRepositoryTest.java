@@ -0,0 +1,192 @@
+package uk.dsx.ats.repositories;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.marketdata.Trades;
+import org.knowm.xchange.service.marketdata.MarketDataService;
+import si.mazi.rescu.ClientConfig;
+import uk.dsx.ats.streaming.MarketDataStream;
+import uk.dsx.ats.utils.DepthBuffer;
+import uk.dsx.ats.utils.PriceLevelBook;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MarketDataRepositoryTest {
+
+    private static final long FRESHNESS = 200L;
+
+    private final FakeStream stream = new FakeStream();
+
+    private int snapshots;
+    // pushed by the stream while the snapshot is requested
+    private Runnable duringSnapshot = () -> {
+    };
+    private MarketDataRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = new MarketDataRepository(null, CurrencyPair.BTC_EUR, "http://localhost/") {
+            @Override
+            protected void requestDepth(DepthBuffer target) {
+                snapshots++;
+                duringSnapshot.run();
+                target.clear();
+                target.addBid(100, 1);
+            }
+        };
+        repository.attachStream(stream, "DSX", FRESHNESS);
+        stream.listener.onConnected();
+    }
+
+    @Test
+    public void levelsBeforeSnapshotAreDropped() throws Exception {
+        stream.pushLevel("101", "1");
+
+        PriceLevelBook book = repository.getPriceLevels();
+
+        assertEquals(1, snapshots);
+        assertEquals(1, book.bidLevels());
+        assertEquals(100, book.bestBidPrice(), 0);
+    }
+
+    @Test
+    public void levelsDuringSnapshotAreAppliedOnTopOfIt() throws Exception {
+        duringSnapshot = () -> {
+            stream.pushLevel("100", "3");
+            stream.pushLevel("101", "1");
+        };
+
+        PriceLevelBook book = repository.getPriceLevels();
+
+        assertEquals(2, book.bidLevels());
+        assertEquals(101, book.bestBidPrice(), 0);
+        assertEquals(3, book.bidVolume(1), 0);
+    }
+
+    @Test
+    public void syncedBookIsUpdatedByStream() throws Exception {
+        repository.getPriceLevels();
+
+        stream.pushLevel("100", "0");
+        stream.pushLevel("99", "2");
+        PriceLevelBook book = repository.getPriceLevels();
+
+        assertEquals(1, snapshots);
+        assertEquals(99, book.bestBidPrice(), 0);
+    }
+
+    @Test
+    public void gapDuringSnapshotKeepsBookUnsynced() throws Exception {
+        duringSnapshot = () -> stream.listener.onOrderBookGap("DSX", CurrencyPair.BTC_EUR);
+        repository.getPriceLevels();
+
+        duringSnapshot = () -> {
+        };
+        repository.getPriceLevels();
+        repository.getPriceLevels();
+
+        assertEquals(2, snapshots);
+    }
+
+    @Test
+    public void gapResyncsBook() throws Exception {
+        repository.getPriceLevels();
+
+        stream.listener.onOrderBookGap("DSX", CurrencyPair.BTC_EUR);
+        stream.pushLevel("101", "1");
+        PriceLevelBook book = repository.getPriceLevels();
+
+        assertEquals(2, snapshots);
+        assertEquals(100, book.bestBidPrice(), 0);
+    }
+
+    @Test
+    public void silentBookIsResyncedWhileStreamIsAlive() throws Exception {
+        repository.getPriceLevels();
+
+        // heartbeats and other pairs keep the stream alive, but not this book
+        Thread.sleep(FRESHNESS * 2);
+        repository.getPriceLevels();
+
+        assertEquals(2, snapshots);
+    }
+
+    @Test
+    public void closeStopsFxRefresh() throws Exception {
+        MarketDataRepository fxRepository = new MarketDataRepository(new FixedTickerService(), CurrencyPair.BTC_EUR,
+                "http://localhost/", new ClientConfig(), 10, 60000);
+        assertEquals(0, new BigDecimal("1").compareTo(fxRepository.getExchangeRate(CurrencyPair.BTC_USD)));
+        assertTrue(fxRefreshThreads() > 0);
+
+        fxRepository.close();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fxRefreshThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, fxRefreshThreads());
+    }
+
+    private static long fxRefreshThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("fx-refresh") && thread.isAlive())
+                .count();
+    }
+
+    private static class FixedTickerService implements MarketDataService {
+
+        @Override
+        public Ticker getTicker(CurrencyPair pair, Object... args) {
+            return new Ticker.Builder().currencyPair(pair).last(BigDecimal.ONE).build();
+        }
+
+        @Override
+        public OrderBook getOrderBook(CurrencyPair pair, Object... args) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Trades getTrades(CurrencyPair pair, Object... args) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class FakeStream implements MarketDataStream {
+
+        Listener listener;
+
+        void pushLevel(String price, String volume) {
+            listener.onOrderBookLevel("DSX", CurrencyPair.BTC_EUR, Order.OrderType.BID, new BigDecimal(price), new BigDecimal(volume));
+        }
+
+        @Override
+        public void subscribe(String exchange, CurrencyPair pair, Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public long getLastMessageTime() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
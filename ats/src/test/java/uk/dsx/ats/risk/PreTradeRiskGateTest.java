@@ -0,0 +1,87 @@
+package uk.dsx.ats.risk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import uk.dsx.ats.data.PriceProperties;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PreTradeRiskGateTest {
+
+    private static final CurrencyPair PAIR = CurrencyPair.BTC_EUR;
+
+    @Test
+    public void rejectsAboveMaxPrice() throws Exception {
+        PreTradeRiskGate gate = gate("{\"maxPrice\": \"10000\"}");
+
+        gate.check(PAIR, new BigDecimal("0.1"), new BigDecimal("10000"));
+        assertRejected(gate, "0.1", "10000.01", "max price");
+    }
+
+    @Test
+    public void rejectsAboveMaxOrderSize() throws Exception {
+        PreTradeRiskGate gate = gate("{\"maxOrderSize\": \"2\"}");
+
+        gate.check(PAIR, new BigDecimal("2"), new BigDecimal("100"));
+        assertRejected(gate, "2.0001", "100", "max order size");
+    }
+
+    @Test
+    public void rejectsOrderOverflowingOrdersPerSecond() throws Exception {
+        PreTradeRiskGate gate = gate("{\"maxOrdersPerSecond\": 2}");
+
+        gate.check(PAIR, BigDecimal.ONE, new BigDecimal("100"));
+        gate.check(PAIR, BigDecimal.ONE, new BigDecimal("100"));
+        assertRejected(gate, "1", "100", "orders per second");
+
+        // counted per instrument
+        gate.check(CurrencyPair.BTC_USD, BigDecimal.ONE, new BigDecimal("100"));
+    }
+
+    @Test
+    public void rejectsOrderOverflowingNotionalWindow() throws Exception {
+        PreTradeRiskGate gate = gate("{\"maxOrdersPerSecond\": 10, \"maxNotional\": \"1000\"}");
+
+        gate.check(PAIR, new BigDecimal("6"), new BigDecimal("100"));
+        gate.check(PAIR, new BigDecimal("4"), new BigDecimal("100"));
+        assertRejected(gate, "0.01", "100", "Notional");
+    }
+
+    @Test
+    public void orderRejectedByNotionalIsTakenBack() throws Exception {
+        PreTradeRiskGate gate = gate("{\"maxOrdersPerSecond\": 1, \"maxNotional\": \"1000\"}");
+
+        assertRejected(gate, "1.2", "1000", "Notional");
+
+        // passes only if neither the order nor its notional stayed in the counters
+        gate.check(PAIR, new BigDecimal("0.9"), new BigDecimal("1000"));
+    }
+
+    @Test
+    public void orderRejectedByPriceIsNotCounted() throws Exception {
+        PreTradeRiskGate gate = gate("{\"maxOrdersPerSecond\": 1, \"maxPrice\": \"10000\"}");
+
+        assertRejected(gate, "1", "20000", "max price");
+
+        gate.check(PAIR, BigDecimal.ONE, new BigDecimal("100"));
+    }
+
+    private static PreTradeRiskGate gate(String json) throws IOException {
+        PriceProperties properties = new ObjectMapper().readValue(json, PriceProperties.class);
+        return new PreTradeRiskGate(() -> properties);
+    }
+
+    private static void assertRejected(PreTradeRiskGate gate, String volume, String price, String reason) {
+        try {
+            gate.check(PAIR, new BigDecimal(volume), new BigDecimal(price));
+            fail("Order " + volume + " by " + price + " was accepted");
+        } catch (RiskLimitException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+}
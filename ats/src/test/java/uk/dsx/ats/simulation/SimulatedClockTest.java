@@ -0,0 +1,47 @@
+package uk.dsx.ats.simulation;
+
+import org.junit.Test;
+import uk.dsx.ats.utils.TradingClock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimulatedClockTest {
+
+    @Test
+    public void startsAtGivenTime() {
+        assertEquals(5000, new SimulatedClock(5000).currentTimeMillis());
+    }
+
+    @Test
+    public void sleepAndRequestsMoveTimeForward() {
+        SimulatedClock clock = new SimulatedClock(5000);
+
+        clock.sleep(1000);
+        clock.advance(100);
+
+        assertEquals(6100, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void neverMovesBack() {
+        SimulatedClock clock = new SimulatedClock(5000);
+
+        clock.advance(-100);
+        clock.sleep(-1);
+
+        assertEquals(5000, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void systemClockFollowsRealTime() throws InterruptedException {
+        long before = System.currentTimeMillis();
+        long start = TradingClock.SYSTEM.currentTimeMillis();
+        TradingClock.SYSTEM.sleep(20);
+        long end = TradingClock.SYSTEM.currentTimeMillis();
+
+        assertTrue(start >= before);
+        assertTrue(end - start >= 20);
+        assertTrue(end <= System.currentTimeMillis());
+    }
+}
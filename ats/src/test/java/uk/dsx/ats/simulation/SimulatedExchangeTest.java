@@ -0,0 +1,67 @@
+package uk.dsx.ats.simulation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import uk.dsx.ats.utils.PriceLevelBook;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class SimulatedExchangeTest {
+
+    private static final CurrencyPair PAIR = CurrencyPair.BTC_EUR;
+    private static final long LATENCY = 100L;
+
+    private SimulatedClock clock;
+    private SimulatedExchange exchange;
+
+    @Before
+    public void setUp() {
+        SimulatedMarket market = new SimulatedMarket(Arrays.asList(
+                tick(0, "7000", "1.15"),
+                tick(1000, "7010", "1.16")));
+        clock = new SimulatedClock(0);
+        exchange = new SimulatedExchange(market, clock, PAIR, new BigDecimal("10000"), LATENCY);
+    }
+
+    @Test
+    public void orderBookIsRequest() throws Exception {
+        PriceLevelBook book = exchange.marketDataRepository().getPriceLevels();
+
+        assertEquals(7000, book.bestBidPrice(), 0);
+        assertEquals(1, exchange.getDsxRequests());
+        assertEquals(LATENCY, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void exchangeRateAndBalanceAreNotRequests() throws Exception {
+        clock.advance(1000);
+
+        assertEquals(new BigDecimal("1.16"), exchange.marketDataRepository().getExchangeRate(CurrencyPair.BTC_USD));
+        assertEquals(0, new BigDecimal("10000").compareTo(exchange.accountRepository().getBalance().getAvailable()));
+        assertEquals(0, exchange.getDsxRequests());
+        assertEquals(1000, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void balanceKeepsFundsOfRestingOrders() throws Exception {
+        exchange.tradeRepository().buyLimit(new BigDecimal("1"), PAIR, new BigDecimal("6000"));
+
+        assertEquals(0, new BigDecimal("4000").compareTo(exchange.accountRepository().getBalance().getAvailable()));
+        assertEquals(0, new BigDecimal("10000").compareTo(exchange.accountRepository().getBalance().getTotal()));
+        assertEquals(1, exchange.getDsxRequests());
+    }
+
+    private static MarketTick tick(long time, String bid, String exchangeRate) {
+        OrderBook orderBook = new OrderBook(null, Collections.emptyList(), Collections.singletonList(
+                new LimitOrder(Order.OrderType.BID, BigDecimal.ONE, PAIR, "", null, new BigDecimal(bid))));
+        return new MarketTick(time, orderBook, null, new BigDecimal("8000"), new BigDecimal(exchangeRate));
+    }
+}
@@ -0,0 +1,130 @@
+package uk.dsx.ats.simulation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SimulatedMarketTest {
+
+    private static final CurrencyPair PAIR = CurrencyPair.BTC_EUR;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsTicksFromCsv() throws IOException {
+        SimulatedMarket market = fromCsv(
+                "time,referencePrice,exchangeRate,lowTradePrice,bidPrice1,bidVolume1",
+                "",
+                "0,8230.5,1.15,7003.9,7004.9,0.3,7004.4,0.4",
+                " 1000 , 8300 , 1.16 , , 7008.3 , 0.3 ");
+
+        assertEquals(2, market.size());
+        assertEquals(0, market.getStartTime());
+        assertEquals(1000, market.getEndTime());
+
+        MarketTick first = market.tickAt(0);
+        assertEquals(new BigDecimal("8230.5"), first.getReferencePrice());
+        assertEquals(new BigDecimal("1.15"), first.getExchangeRate());
+        assertEquals(new BigDecimal("7003.9"), first.getLowTradePrice());
+        List<LimitOrder> bids = first.getOrderBook().getBids();
+        assertEquals(2, bids.size());
+        assertEquals(new BigDecimal("7004.9"), bids.get(0).getLimitPrice());
+        assertEquals(new BigDecimal("0.3"), bids.get(0).getOriginalAmount());
+        assertEquals(new BigDecimal("7004.4"), bids.get(1).getLimitPrice());
+        assertEquals(PAIR, bids.get(1).getCurrencyPair());
+
+        MarketTick second = market.tickAt(1000);
+        assertNull(second.getLowTradePrice());
+        assertEquals(new BigDecimal("1.16"), second.getExchangeRate());
+        assertEquals(1, second.getOrderBook().getBids().size());
+    }
+
+    @Test
+    public void readsTicksWithoutBids() throws IOException {
+        SimulatedMarket market = fromCsv("0,8230,1.15,");
+
+        assertTrue(market.tickAt(0).getOrderBook().getBids().isEmpty());
+    }
+
+    @Test
+    public void sortsTicksByTime() throws IOException {
+        SimulatedMarket market = fromCsv("2000,3,1,", "0,1,1,", "1000,2,1,");
+
+        assertEquals(0, market.getStartTime());
+        assertEquals(2000, market.getEndTime());
+        assertEquals(new BigDecimal("2"), market.tickAt(1000).getReferencePrice());
+    }
+
+    @Test
+    public void takesLastTickAtOrBeforeTime() throws IOException {
+        SimulatedMarket market = fromCsv("1000,1,1,", "2000,2,1,", "2000,3,1,", "3000,4,1,");
+
+        assertEquals(new BigDecimal("1"), market.tickAt(0).getReferencePrice());
+        assertEquals(new BigDecimal("1"), market.tickAt(1999).getReferencePrice());
+        assertEquals(new BigDecimal("3"), market.tickAt(2000).getReferencePrice());
+        assertEquals(new BigDecimal("4"), market.tickAt(5000).getReferencePrice());
+    }
+
+    @Test
+    public void findsLowestTradeAfterFromUpToTo() throws IOException {
+        SimulatedMarket market = fromCsv("0,1,1,90", "1000,1,1,95", "2000,1,1,", "3000,1,1,99", "4000,1,1,80");
+
+        assertEquals(new BigDecimal("95"), market.lowestTradePrice(0, 3000));
+        assertEquals(new BigDecimal("99"), market.lowestTradePrice(1000, 3999));
+        assertEquals(new BigDecimal("80"), market.lowestTradePrice(500, 4000));
+        assertNull(market.lowestTradePrice(1000, 2999));
+        assertNull(market.lowestTradePrice(4000, 9000));
+    }
+
+    @Test
+    public void rejectsWrongNumberOfValues() throws IOException {
+        expectError("Wrong number of values in line 2", "0,1,1,", "1000,1,1,,7000");
+        expectError("Wrong number of values in line 1", "0,1,1");
+    }
+
+    @Test
+    public void rejectsWrongNumbers() throws IOException {
+        expectError("Wrong number in line 3", "0,1,1,", "1000,1,1,", "2000,1,abc,");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMarketWithoutTicks() throws IOException {
+        fromCsv("time,referencePrice,exchangeRate,lowTradePrice");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyTickList() {
+        new SimulatedMarket(Collections.emptyList());
+    }
+
+    private void expectError(String message, String... lines) throws IOException {
+        try {
+            fromCsv(lines);
+            fail("Market was read from wrong csv");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    private SimulatedMarket fromCsv(String... lines) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        return SimulatedMarket.fromCsv(file, PAIR);
+    }
+}
@@ -0,0 +1,86 @@
+package uk.dsx.ats.simulation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import uk.dsx.ats.repositories.TradeRepository;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SweepResultTest {
+
+    private static final CurrencyPair PAIR = CurrencyPair.BTC_EUR;
+
+    private final Map<String, BigDecimal> parameters = new LinkedHashMap<>();
+    private SimulatedClock clock;
+    private SimulatedExchange exchange;
+
+    @Before
+    public void setUp() {
+        parameters.put("stepToMove", new BigDecimal("0.1"));
+        parameters.put("sensitivity", new BigDecimal("5"));
+
+        SimulatedMarket market = new SimulatedMarket(Arrays.asList(
+                tick(0, null),
+                tick(1000, new BigDecimal("6999")),
+                tick(10000, null)));
+        clock = new SimulatedClock(market.getStartTime());
+        exchange = new SimulatedExchange(market, clock, PAIR, new BigDecimal("10000"), 100);
+    }
+
+    @Test
+    public void aggregatesOrdersAndRequestsOfRun() throws Exception {
+        TradeRepository tradeRepository = exchange.tradeRepository();
+        String filled = tradeRepository.buyLimit(new BigDecimal("0.5"), PAIR, new BigDecimal("7000"));
+        exchange.averagePriceRepository(CurrencyPair.BTC_USD, 5).getAveragePrice();
+        clock.sleep(1000);
+        // trade at 6999 has happened since the order was placed, the status request fills it
+        tradeRepository.getOrderStatus(Long.parseLong(filled));
+        tradeRepository.buyLimit(new BigDecimal("0.5"), PAIR, new BigDecimal("6000"));
+
+        SweepResult result = SweepResult.of(parameters, "FILLED", exchange);
+
+        assertEquals(2, result.getPlacedOrders());
+        assertEquals(1, result.getFilledOrders());
+        assertEquals(0.5, result.getFillRate(), 0);
+        assertEquals(1300, result.getTimeToFill());
+        // 7000 EUR * 1.15 = 8050 USD against reference price 8855
+        assertEquals(8050.0 / 8855 - 1, result.getFillPriceVsReference(), 1e-9);
+        assertEquals(3, result.getDsxRequests());
+        assertEquals(1, result.getReferenceRequests());
+        assertEquals("stepToMove=0.1 sensitivity=5,FILLED,2,1,0.5000,1300,-0.090909,3,1", result.toCsv());
+    }
+
+    @Test
+    public void leavesFillColumnsEmptyWithoutFills() {
+        SweepResult result = SweepResult.of(parameters, "NOT_ENOUGH_FUNDS", exchange);
+
+        assertEquals(0, result.getFillRate(), 0);
+        assertEquals(-1, result.getTimeToFill());
+        assertNull(result.getFillPriceVsReference());
+        assertEquals("stepToMove=0.1 sensitivity=5,NOT_ENOUGH_FUNDS,0,0,0.0000,-1,,0,0", result.toCsv());
+    }
+
+    @Test
+    public void headerMatchesCsvColumns() {
+        String csv = SweepResult.of(parameters, "MARKET_ENDED", exchange).toCsv();
+
+        assertEquals(SweepResult.HEADER.split(",").length, csv.split(",", -1).length);
+    }
+
+    private static MarketTick tick(long time, BigDecimal lowTradePrice) {
+        LimitOrder bid = new LimitOrder(Order.OrderType.BID, BigDecimal.ONE, PAIR, "", null, new BigDecimal("7000"));
+        return new MarketTick(time, new OrderBook(null, Collections.emptyList(), Collections.singletonList(bid)),
+                lowTradePrice, new BigDecimal("8855"), new BigDecimal("1.15"));
+    }
+}
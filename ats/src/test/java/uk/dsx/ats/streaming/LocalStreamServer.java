@@ -0,0 +1,308 @@
+package uk.dsx.ats.streaming;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for a streaming venue, speaks the {@link StreamingClient} protocol over a minimal WebSocket server
+ * (RFC 6455 handshake, unfragmented text frames, ping and close) on the local port.
+ */
+public class LocalStreamServer implements AutoCloseable {
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+    private static final int STATUS_GOING_AWAY = 1001;
+
+    private final ServerSocket serverSocket;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final Map<String, AtomicLong> bookSequences = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    public LocalStreamServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::accept, "local-stream-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getUrl() {
+        return "ws://localhost:" + getPort() + "/";
+    }
+
+    /**
+     * @return true if a client subscribed to the exchange and pair within the timeout
+     */
+    public boolean awaitSubscription(String exchange, CurrencyPair pair, long timeoutMillis) throws InterruptedException {
+        String key = key(exchange, pair.toString());
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            if (clients.stream().anyMatch(client -> client.subscriptions.contains(key))) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    public void publishBookLevel(String exchange, CurrencyPair pair, Order.OrderType side, BigDecimal price, BigDecimal volume) {
+        ObjectNode message = message("book", exchange, pair);
+        message.put("side", side == Order.OrderType.ASK ? "ask" : "bid");
+        message.put("price", price.toPlainString());
+        message.put("volume", volume.toPlainString());
+        message.put("seq", bookSequences.computeIfAbsent(key(exchange, pair.toString()), k -> new AtomicLong()).incrementAndGet());
+        publish(message);
+    }
+
+    public void publishTicker(String exchange, CurrencyPair pair, BigDecimal last, BigDecimal bid, BigDecimal ask) {
+        ObjectNode message = message("ticker", exchange, pair);
+        message.put("last", last.toPlainString());
+        message.put("bid", bid.toPlainString());
+        message.put("ask", ask.toPlainString());
+        publish(message);
+    }
+
+    public void publishHeartbeat() {
+        sendRaw(mapper.createObjectNode().put("event", "heartbeat").toString());
+    }
+
+    /**
+     * Sends the raw JSON message to clients subscribed to its exchange and pair
+     */
+    public void publish(String json) throws IOException {
+        publish((ObjectNode) mapper.readTree(json));
+    }
+
+    /**
+     * Sends the text to every client as it is, e.g. a malformed message
+     */
+    public void sendRaw(String text) {
+        clients.forEach(client -> client.sendText(text));
+    }
+
+    /**
+     * Closes all connections with "going away" status, clients are expected to reconnect and resubscribe
+     */
+    public void disconnectClients() {
+        for (Client client : clients) {
+            try {
+                client.send(OPCODE_CLOSE, new byte[]{(byte) (STATUS_GOING_AWAY >>> 8), (byte) STATUS_GOING_AWAY});
+            } catch (IOException ignored) {
+            }
+            client.close();
+        }
+        clients.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        disconnectClients();
+        serverSocket.close();
+    }
+
+    private void publish(ObjectNode message) {
+        String key = key(message.path("exchange").asText(), message.path("pair").asText());
+        String text = message.toString();
+        for (Client client : clients) {
+            if (client.subscriptions.contains(key)) {
+                client.sendText(text);
+            }
+        }
+    }
+
+    private ObjectNode message(String channel, String exchange, CurrencyPair pair) {
+        ObjectNode message = mapper.createObjectNode();
+        message.put("channel", channel);
+        message.put("exchange", exchange);
+        message.put("pair", pair.toString());
+        return message;
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread reader = new Thread(() -> serve(socket), "local-stream-client");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Local stream server accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Client client = null;
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream output = socket.getOutputStream();
+            handshake(input, output);
+            client = new Client(socket, output);
+            clients.add(client);
+            client.read(input);
+        } catch (IOException | NoSuchAlgorithmException ignored) {
+        } finally {
+            if (client != null) {
+                clients.remove(client);
+                client.close();
+            } else {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static void handshake(DataInputStream input, OutputStream output) throws IOException, NoSuchAlgorithmException {
+        String key = null;
+        String line;
+        while ((line = readLine(input)) != null && !line.isEmpty()) {
+            int separator = line.indexOf(':');
+            if (separator > 0 && line.substring(0, separator).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                key = line.substring(separator + 1).trim();
+            }
+        }
+        if (key == null) {
+            throw new IOException("Not a WebSocket handshake");
+        }
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + Base64.getEncoder().encodeToString(digest) + "\r\n\r\n";
+        output.write(response.getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+    }
+
+    private static String readLine(DataInputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = input.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static String key(String exchange, String pair) {
+        return exchange.toUpperCase() + ":" + pair;
+    }
+
+    private class Client {
+
+        final Socket socket;
+        final OutputStream output;
+        final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+
+        Client(Socket socket, OutputStream output) {
+            this.socket = socket;
+            this.output = output;
+        }
+
+        /**
+         * Client frames are always masked, fragmented messages are not expected from StreamingClient
+         */
+        void read(DataInputStream input) throws IOException {
+            while (true) {
+                int first = input.readUnsignedByte();
+                int second = input.readUnsignedByte();
+                int opcode = first & 0x0F;
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = input.readUnsignedShort();
+                } else if (length == 127) {
+                    length = input.readLong();
+                }
+                byte[] mask = new byte[4];
+                if ((second & 0x80) != 0) {
+                    input.readFully(mask);
+                }
+                byte[] payload = new byte[(int) length];
+                input.readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i % 4];
+                }
+
+                if (opcode == OPCODE_TEXT) {
+                    JsonNode message = mapper.readTree(new String(payload, StandardCharsets.UTF_8));
+                    if (message != null && "subscribe".equals(message.path("event").asText())) {
+                        subscriptions.add(key(message.path("exchange").asText(), message.path("pair").asText()));
+                    }
+                } else if (opcode == OPCODE_PING) {
+                    send(OPCODE_PONG, payload);
+                } else if (opcode == OPCODE_CLOSE) {
+                    send(OPCODE_CLOSE, payload);
+                    return;
+                }
+            }
+        }
+
+        void sendText(String text) {
+            try {
+                send(OPCODE_TEXT, text.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        synchronized void send(int opcode, byte[] payload) throws IOException {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 10);
+            frame.write(0x80 | opcode);
+            if (payload.length < 126) {
+                frame.write(payload.length);
+            } else if (payload.length < 65536) {
+                frame.write(126);
+                frame.write(payload.length >>> 8);
+                frame.write(payload.length & 0xFF);
+            } else {
+                frame.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    frame.write((int) ((long) payload.length >>> shift) & 0xFF);
+                }
+            }
+            frame.write(payload);
+            output.write(frame.toByteArray());
+            output.flush();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
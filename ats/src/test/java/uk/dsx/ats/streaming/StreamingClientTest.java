@@ -0,0 +1,113 @@
+package uk.dsx.ats.streaming;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingClientTest {
+
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+    private LocalStreamServer server;
+    private StreamingClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalStreamServer(0);
+        client = new StreamingClient(URI.create(server.getUrl()));
+        client.subscribe("DSX", CurrencyPair.BTC_EUR, new MarketDataStream.Listener() {
+            @Override
+            public void onOrderBookLevel(String exchange, CurrencyPair pair, Order.OrderType side, BigDecimal price, BigDecimal volume) {
+                received.add("level " + side + " " + price + " " + volume);
+            }
+
+            @Override
+            public void onOrderBookGap(String exchange, CurrencyPair pair) {
+                received.add("gap " + pair);
+            }
+
+            @Override
+            public void onTicker(String exchange, CurrencyPair pair, BigDecimal last, BigDecimal bid, BigDecimal ask) {
+                received.add("ticker " + last);
+            }
+        });
+        client.start();
+
+        assertTrue(server.awaitSubscription("DSX", CurrencyPair.BTC_EUR, 5000));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void malformedMessagesDoNotStopTheStream() throws Exception {
+        server.sendRaw("{not json");
+        server.sendRaw("{\"channel\":\"book\",\"exchange\":\"DSX\",\"pair\":\"BTCEUR\",\"price\":\"1\",\"volume\":\"1\"}");
+        server.sendRaw("{\"channel\":\"book\",\"exchange\":\"DSX\",\"pair\":\"BTC/EUR\",\"price\":\"abc\",\"volume\":\"1\"}");
+        server.sendRaw("{\"channel\":\"ticker\",\"exchange\":\"DSX\",\"pair\":\"BTC/EUR\",\"last\":\"8000\"}");
+
+        assertEquals("ticker 8000", next());
+        assertTrue(client.isConnected());
+    }
+
+    @Test
+    public void outdatedLevelsAreDroppedAndGapsReported() throws Exception {
+        server.sendRaw(level(5, "100", "1"));
+        server.sendRaw(level(6, "100", "2"));
+        server.sendRaw(level(6, "100", "3"));
+        server.sendRaw(level(4, "100", "4"));
+        server.sendRaw(level(8, "101", "1"));
+
+        assertEquals("level BID 100 1", next());
+        assertEquals("level BID 100 2", next());
+        assertEquals("gap BTC/EUR", next());
+        assertEquals("level BID 101 1", next());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void levelsWithoutSequenceAreAllPassed() throws Exception {
+        server.sendRaw("{\"channel\":\"book\",\"exchange\":\"DSX\",\"pair\":\"BTC/EUR\",\"side\":\"ask\",\"price\":\"100\",\"volume\":\"1\"}");
+        server.sendRaw("{\"channel\":\"book\",\"exchange\":\"DSX\",\"pair\":\"BTC/EUR\",\"side\":\"ask\",\"price\":\"100\",\"volume\":\"1\"}");
+
+        assertEquals("level ASK 100 1", next());
+        assertEquals("level ASK 100 1", next());
+    }
+
+    @Test
+    public void sequenceStartsOverAfterReconnect() throws Exception {
+        server.sendRaw(level(5, "100", "1"));
+        assertEquals("level BID 100 1", next());
+
+        server.disconnectClients();
+        assertTrue(server.awaitSubscription("DSX", CurrencyPair.BTC_EUR, 5000));
+        server.sendRaw(level(1, "100", "2"));
+
+        assertEquals("level BID 100 2", next());
+        assertTrue(client.isConnected());
+    }
+
+    private String next() throws InterruptedException {
+        return received.poll(5, TimeUnit.SECONDS);
+    }
+
+    private static String level(long sequence, String price, String volume) {
+        return "{\"channel\":\"book\",\"exchange\":\"DSX\",\"pair\":\"BTC/EUR\",\"side\":\"bid\",\"price\":\"" + price
+                + "\",\"volume\":\"" + volume + "\",\"seq\":" + sequence + "}";
+    }
+}
@@ -0,0 +1,99 @@
+package uk.dsx.ats.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveIntervalTest {
+
+    private static final long BASE = 3000L;
+
+    // 60 requests per minute, up to 4 times the base interval, 0.2% move is fast market
+    private final AdaptiveInterval interval = new AdaptiveInterval(BASE, 60, 4, 0.002);
+
+    @Test
+    public void calmMarketBacksOffToMaxInterval() {
+        requests(2);
+
+        assertEquals(4 * BASE, interval.next(0));
+        assertEquals(BASE, interval.next(0.5));
+        assertEquals(2000L, interval.next(1));
+    }
+
+    @Test
+    public void minIntervalFollowsRequestsPerCheck() {
+        requests(2);
+        assertEquals(2000L, interval.getMinInterval());
+
+        // data comes from the stream, checks make no requests
+        requests(0);
+        assertEquals(0L, interval.getMinInterval());
+        assertEquals(0L, interval.next(1));
+
+        requests(1);
+        assertEquals(1000L, interval.getMinInterval());
+    }
+
+    @Test
+    public void expensiveChecksStretchBaseInterval() {
+        requests(5);
+
+        assertEquals(5000L, interval.next(1));
+        assertEquals(5000L, interval.next(0.5));
+        assertEquals(4 * BASE, interval.next(0));
+
+        requests(20);
+
+        assertEquals(20000L, interval.next(0));
+    }
+
+    @Test
+    public void singleRetryDoesNotDoubleInterval() {
+        requests(2);
+
+        interval.onRequests(4);
+
+        long min = interval.getMinInterval();
+        assertTrue("min interval was " + min, min > 2000L && min < 4000L);
+    }
+
+    @Test
+    public void fastMarketShortensIntervalAndRecovers() {
+        requests(2);
+        interval.onPrice(100);
+        interval.onPrice(101);
+
+        assertEquals(2000L, interval.next(0));
+
+        for (int i = 0; i < 50; i++) {
+            interval.onPrice(101);
+        }
+
+        assertEquals(4 * BASE, interval.next(0));
+    }
+
+    @Test
+    public void missingPriceIsIgnored() {
+        interval.onPrice(100);
+        interval.onPrice(Double.NaN);
+        interval.onPrice(0);
+        interval.onPrice(100);
+
+        assertEquals(0, interval.getVolatility(), 0);
+    }
+
+    @Test
+    public void withoutBudgetBaseIntervalIsTheShortest() {
+        AdaptiveInterval unlimited = new AdaptiveInterval(BASE, 0, 4, 0.002);
+
+        assertEquals(BASE, unlimited.next(1));
+        assertEquals(4 * BASE, unlimited.next(0));
+    }
+
+    private void requests(long perCheck) {
+        for (int i = 0; i < 100; i++) {
+            interval.onRequests(perCheck);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package uk.dsx.ats.utils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.dsx.ats.data.PriceProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PriceProperties initial = new PriceProperties();
+
+    private File configFile;
+    private ConfigWatcher watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        configFile = folder.newFile("config.json");
+        watcher = new ConfigWatcher(configFile.getPath(), initial);
+    }
+
+    @Test
+    public void validEditIsApplied() throws IOException {
+        write("{\"PriceConfig\": {\"pricePercentage\": \"1.02\", \"stepToMove\": \"0.5\"}}");
+
+        assertTrue(watcher.reload());
+
+        assertEquals(new BigDecimal("1.02"), watcher.get().getPricePercentage());
+        assertEquals(new BigDecimal("0.5"), watcher.get().getStepToMove());
+    }
+
+    @Test
+    public void invalidEditKeepsSnapshot() throws IOException {
+        write("{\"PriceConfig\": {\"pricePercentage\": \"1.02\", \"maxPrice\": \"-1\"}}");
+
+        assertFalse(watcher.reload());
+
+        assertSame(initial, watcher.get());
+    }
+
+    @Test
+    public void restartOnlyChangeIsRejected() throws IOException {
+        write("{\"PriceConfig\": {\"pricePercentage\": \"1.02\", \"dsxCurrencyPair\": \"BTC/USD\"}}");
+
+        assertFalse(watcher.reload());
+
+        assertSame(initial, watcher.get());
+    }
+
+    @Test
+    public void unreadableFileKeepsSnapshot() throws IOException {
+        write("{\"PriceConfig\": {\"pricePercentage\": ");
+
+        assertFalse(watcher.reload());
+
+        assertSame(initial, watcher.get());
+    }
+
+    @Test
+    public void editAfterRejectedOneIsApplied() throws IOException {
+        write("{\"PriceConfig\": {\"maxPrice\": \"-1\"}}");
+        assertFalse(watcher.reload());
+
+        write("{\"PriceConfig\": {\"maxPrice\": \"15000\"}}");
+
+        assertTrue(watcher.reload());
+        assertEquals(new BigDecimal("15000"), watcher.get().getMaxPrice());
+    }
+
+    private void write(String json) throws IOException {
+        Files.write(configFile.toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+}
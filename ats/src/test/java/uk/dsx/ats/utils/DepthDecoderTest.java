@@ -0,0 +1,172 @@
+package uk.dsx.ats.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.exceptions.ExchangeException;
+import si.mazi.rescu.ClientConfig;
+import si.mazi.rescu.HttpStatusIOException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DepthDecoderTest {
+
+    private static final String DEPTH = "{\"btceur\":{\"asks\":[[8001.5,0.5],[\"8002\",\"1.25\"]],"
+            + "\"bids\":[[8000,1,\"ignored\"],[7999.99,2],[7999,3]],\"other\":{\"a\":[1]}},\"usdeur\":{\"bids\":[[1,1]]}}";
+
+    private final DepthBuffer buffer = new DepthBuffer();
+
+    private HttpServer server;
+    private int status;
+    private String body;
+    private long responseDelay;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/mapi/depth/", exchange -> {
+            try {
+                Thread.sleep(responseDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] response = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void decodesLevels() throws IOException {
+        DepthDecoder.decode(json(DEPTH), "btceur", 0, buffer);
+
+        assertEquals(3, buffer.bidCount());
+        assertEquals(8000, buffer.bidPrice(0), 0);
+        assertEquals(1, buffer.bidVolume(0), 0);
+        assertEquals(7999.99, buffer.bidPrice(1), 0);
+        assertEquals(2, buffer.askCount());
+        assertEquals(8002, buffer.askPrice(1), 0);
+        assertEquals(1.25, buffer.askVolume(1), 0);
+    }
+
+    @Test
+    public void keepsOnlyMaxLevels() throws IOException {
+        DepthDecoder.decode(json(DEPTH), "btceur", 2, buffer);
+
+        assertEquals(2, buffer.bidCount());
+        assertEquals(7999.99, buffer.bidPrice(1), 0);
+        assertEquals(2, buffer.askCount());
+    }
+
+    @Test
+    public void decodesEmptyBook() throws IOException {
+        DepthDecoder.decode(json(DEPTH), "btceur", 0, buffer);
+
+        DepthDecoder.decode(json("{\"btceur\":{\"asks\":[],\"bids\":[]}}"), "btceur", 0, buffer);
+
+        assertFalse(buffer.hasBids());
+        assertEquals(0, buffer.askCount());
+        assertTrue(Double.isNaN(buffer.bestBidPrice()));
+    }
+
+    @Test
+    public void errorPayloadIsExchangeException() throws IOException {
+        try {
+            DepthDecoder.decode(json("{\"success\":0,\"error\":\"Exceeded limit request per minute\"}"), "btceur", 0, buffer);
+            fail();
+        } catch (ExchangeException e) {
+            assertEquals("Exceeded limit request per minute", e.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedBodyIsIOException() throws IOException {
+        DepthDecoder.decode(json("[1,2]"), "btceur", 0, buffer);
+    }
+
+    @Test
+    public void readsBookOverHttp() throws IOException {
+        status = 200;
+        body = DEPTH;
+
+        decoder().read(CurrencyPair.BTC_EUR, "LIVE", 0, buffer);
+
+        assertEquals(3, buffer.bidCount());
+    }
+
+    @Test
+    public void errorStatusIsHttpStatusIOException() throws IOException {
+        status = 502;
+        body = "Bad gateway";
+
+        try {
+            decoder().read(CurrencyPair.BTC_EUR, "LIVE", 0, buffer);
+            fail();
+        } catch (HttpStatusIOException e) {
+            assertEquals(502, e.getHttpStatusCode());
+            assertEquals("Bad gateway", e.getHttpBody());
+        }
+    }
+
+    @Test
+    public void teapotStatusKeepsStatusInMessage() throws IOException {
+        status = 418;
+        body = "";
+
+        try {
+            decoder().read(CurrencyPair.BTC_EUR, "LIVE", 0, buffer);
+            fail();
+        } catch (HttpStatusIOException e) {
+            assertTrue(e.getMessage().contains("418"));
+        }
+    }
+
+    @Test(expected = ExchangeException.class)
+    public void errorPayloadOverHttpIsExchangeException() throws IOException {
+        status = 200;
+        body = "{\"success\":0,\"error\":\"Invalid pair\"}";
+
+        decoder().read(CurrencyPair.BTC_EUR, "LIVE", 0, buffer);
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void readTimeoutIsTakenFromClientConfig() throws IOException {
+        status = 200;
+        body = DEPTH;
+        responseDelay = 1000;
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.setHttpReadTimeout(100);
+
+        new DepthDecoder("http://localhost:" + server.getAddress().getPort(), clientConfig)
+                .read(CurrencyPair.BTC_EUR, "LIVE", 0, buffer);
+    }
+
+    private DepthDecoder decoder() {
+        return new DepthDecoder("http://localhost:" + server.getAddress().getPort());
+    }
+
+    private static InputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
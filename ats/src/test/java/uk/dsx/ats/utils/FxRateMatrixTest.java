@@ -0,0 +1,99 @@
+package uk.dsx.ats.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FxRateMatrixTest {
+
+    private FxRateMatrix matrix;
+
+    @Before
+    public void setUp() {
+        matrix = new FxRateMatrix(Arrays.asList(Currency.BTC, Currency.EUR, Currency.USD), Currency.BTC);
+    }
+
+    @Test
+    public void quotedLegIsInverted() {
+        matrix.updateRate(CurrencyPair.BTC_EUR, new BigDecimal("8000"), 1000);
+
+        assertRate("8000", Currency.BTC, Currency.EUR);
+        assertRate("0.000125", Currency.EUR, Currency.BTC);
+    }
+
+    @Test
+    public void crossRateIsDerivedThroughPivot() {
+        matrix.updateRate(CurrencyPair.BTC_EUR, new BigDecimal("8000"), 1000);
+        assertNull(matrix.getRate(Currency.EUR, Currency.USD));
+
+        matrix.updateRate(CurrencyPair.BTC_USD, new BigDecimal("10000"), 1000);
+
+        assertRate("1.25", Currency.EUR, Currency.USD);
+        assertRate("0.8", Currency.USD, Currency.EUR);
+        assertEquals(Arrays.asList(CurrencyPair.BTC_EUR, CurrencyPair.BTC_USD), matrix.legsFor(Currency.EUR, Currency.USD));
+    }
+
+    @Test
+    public void crossRateFollowsPivotLegUpdate() {
+        matrix.updateRate(CurrencyPair.BTC_EUR, new BigDecimal("8000"), 1000);
+        matrix.updateRate(CurrencyPair.BTC_USD, new BigDecimal("10000"), 1000);
+
+        matrix.updateRate(CurrencyPair.BTC_USD, new BigDecimal("12000"), 2000);
+
+        assertRate("1.5", Currency.EUR, Currency.USD);
+    }
+
+    @Test
+    public void directLegIsPreferredToCrossRate() {
+        matrix.updateRate(CurrencyPair.BTC_EUR, new BigDecimal("8000"), 1000);
+        matrix.updateRate(CurrencyPair.BTC_USD, new BigDecimal("10000"), 1000);
+
+        matrix.updateRate(CurrencyPair.EUR_USD, new BigDecimal("1.2"), 1000);
+
+        assertRate("1.2", Currency.EUR, Currency.USD);
+        assertRate("0.8333333333", Currency.USD, Currency.EUR);
+        assertEquals(Collections.singletonList(CurrencyPair.EUR_USD), matrix.legsFor(Currency.USD, Currency.EUR));
+    }
+
+    @Test
+    public void rateIsStaleWhenAnyLegIsOld() {
+        matrix.updateRate(CurrencyPair.BTC_EUR, new BigDecimal("8000"), 1000);
+        matrix.updateRate(CurrencyPair.BTC_USD, new BigDecimal("10000"), 5000);
+
+        assertEquals(0, new BigDecimal("1.25").compareTo(matrix.getRate(Currency.EUR, Currency.USD, 1000)));
+        assertNull(matrix.getRate(Currency.EUR, Currency.USD, 1001));
+        assertEquals(0, new BigDecimal("10000").compareTo(matrix.getRate(Currency.BTC, Currency.USD, 1001)));
+
+        matrix.updateRate(CurrencyPair.BTC_EUR, new BigDecimal("8000"), 6000);
+
+        assertEquals(0, new BigDecimal("1.25").compareTo(matrix.getRate(Currency.EUR, Currency.USD, 5000)));
+    }
+
+    @Test
+    public void sameCurrencyRateIsNeverStale() {
+        assertEquals(BigDecimal.ONE, matrix.getRate(Currency.EUR, Currency.EUR, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void notPositivePriceIsIgnored() {
+        matrix.updateRate(CurrencyPair.BTC_EUR, new BigDecimal("8000"), 1000);
+
+        matrix.updateRate(CurrencyPair.BTC_EUR, BigDecimal.ZERO, 2000);
+
+        assertRate("8000", Currency.BTC, Currency.EUR);
+        assertNull(matrix.getRate(Currency.BTC, Currency.EUR, 2000));
+    }
+
+    private void assertRate(String expected, Currency from, Currency to) {
+        BigDecimal rate = matrix.getRate(from, to);
+        assertEquals(from + " -> " + to + " was " + rate, 0, new BigDecimal(expected).compareTo(rate));
+    }
+}
@@ -0,0 +1,55 @@
+package uk.dsx.ats.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyStatsTest {
+
+    @Test
+    public void emptyStatsHaveNoPercentile() {
+        LatencyStats stats = new LatencyStats(10);
+
+        assertEquals(0, stats.size());
+        assertEquals(-1, stats.percentile(0.95));
+    }
+
+    @Test
+    public void percentilesOfRecordedLatencies() {
+        LatencyStats stats = new LatencyStats(100);
+        // recorded out of order, 1..100 ms
+        for (int i = 0; i < 100; i++) {
+            stats.record((i * 37) % 100 + 1);
+        }
+
+        assertEquals(100, stats.size());
+        assertEquals(50, stats.percentile(0.5));
+        assertEquals(95, stats.percentile(0.95));
+        assertEquals(100, stats.percentile(1));
+        assertEquals(1, stats.percentile(0));
+    }
+
+    @Test
+    public void percentileOfFewSamplesIsRoundedUp() {
+        LatencyStats stats = new LatencyStats(10);
+        stats.record(10);
+        stats.record(30);
+        stats.record(20);
+
+        assertEquals(20, stats.percentile(0.5));
+        assertEquals(30, stats.percentile(0.95));
+    }
+
+    @Test
+    public void onlyLastSamplesAreKept() {
+        LatencyStats stats = new LatencyStats(3);
+        stats.record(1000);
+        stats.record(2000);
+        stats.record(10);
+        stats.record(20);
+        stats.record(30);
+
+        assertEquals(3, stats.size());
+        assertEquals(30, stats.percentile(0.95));
+    }
+}
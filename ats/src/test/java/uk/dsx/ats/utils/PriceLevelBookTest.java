@@ -0,0 +1,153 @@
+package uk.dsx.ats.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.dto.Order;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PriceLevelBookTest {
+
+    private PriceLevelBook book;
+    private final List<String> changes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        book = new PriceLevelBook(2);
+        book.resync(snapshot(100, 1, 99, 2));
+        book.addListener((side, price, volume) -> changes.add(side + " " + price + " " + volume));
+    }
+
+    @Test
+    public void insertAtBestLevel() {
+        book.apply(Order.OrderType.BID, 101, 0.5);
+
+        assertEquals(3, book.bidLevels());
+        assertEquals(101, book.bestBidPrice(), 0);
+        assertEquals(0.5, book.bidVolume(0), 0);
+        assertEquals(100, book.bidPrice(1), 0);
+        assertEquals(99, book.bidPrice(2), 0);
+        assertEquals(Collections.singletonList("BID 101.0 0.5"), changes);
+    }
+
+    @Test
+    public void updateAtBestLevel() {
+        book.apply(Order.OrderType.BID, 100, 3);
+
+        assertEquals(2, book.bidLevels());
+        assertEquals(100, book.bestBidPrice(), 0);
+        assertEquals(3, book.bidVolume(0), 0);
+        assertEquals(Collections.singletonList("BID 100.0 3.0"), changes);
+    }
+
+    @Test
+    public void sameVolumeIsNotAChange() {
+        book.apply(Order.OrderType.BID, 100, 1);
+
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void removeAtBestLevel() {
+        book.apply(Order.OrderType.BID, 100, 0);
+
+        assertEquals(1, book.bidLevels());
+        assertEquals(99, book.bestBidPrice(), 0);
+        assertEquals(Collections.singletonList("BID 100.0 0.0"), changes);
+
+        book.apply(Order.OrderType.BID, 100, 0);
+        book.apply(Order.OrderType.BID, 99, 0);
+
+        assertEquals(0, book.bidLevels());
+        assertTrue(Double.isNaN(book.bestBidPrice()));
+        assertEquals(Arrays.asList("BID 100.0 0.0", "BID 99.0 0.0"), changes);
+    }
+
+    @Test
+    public void bidQueries() {
+        book.apply(Order.OrderType.BID, 101, 0.5);
+
+        assertEquals(1.5, book.bidVolumeAbove(99), 0);
+        assertEquals(0, book.bidVolumeAbove(101), 0);
+        assertEquals(99, book.bidPriceAfter(100), 0);
+        assertEquals(100, book.bidPriceAfter(100.5), 0);
+        assertTrue(Double.isNaN(book.bidPriceAfter(99)));
+    }
+
+    @Test
+    public void asksAreSortedAscending() {
+        book.apply(Order.OrderType.ASK, 103, 1);
+        book.apply(Order.OrderType.ASK, 102, 1);
+
+        assertEquals(102, book.askPrice(0), 0);
+        assertEquals(103, book.askPrice(1), 0);
+        assertEquals(2, book.bidLevels());
+    }
+
+    @Test
+    public void resyncNotifiesOnlyChangedLevels() {
+        book.resync(snapshot(101, 1, 100, 1, 98, 4, 98, 1));
+
+        assertEquals(Arrays.asList("BID 101.0 1.0", "BID 99.0 0.0", "BID 98.0 5.0"), changes);
+        assertEquals(3, book.bidLevels());
+        assertEquals(5, book.bidVolume(2), 0);
+    }
+
+    @Test
+    public void resyncSortsUnorderedSnapshot() {
+        book.resync(snapshot(98, 1, 101, 1, 99, 2, 100, 1, 98, 2));
+
+        assertEquals(4, book.bidLevels());
+        assertEquals(101, book.bidPrice(0), 0);
+        assertEquals(100, book.bidPrice(1), 0);
+        assertEquals(99, book.bidPrice(2), 0);
+        assertEquals(98, book.bidPrice(3), 0);
+        assertEquals(3, book.bidVolume(3), 0);
+        assertEquals(Arrays.asList("BID 101.0 1.0", "BID 98.0 3.0"), changes);
+    }
+
+    @Test
+    public void bookGrowsBeyondInitialDepth() {
+        PriceLevelBook small = new PriceLevelBook(1);
+        for (int price = 100; price < 110; price++) {
+            small.apply(Order.OrderType.BID, price, 1);
+        }
+
+        assertEquals(10, small.bidLevels());
+        assertEquals(109, small.bestBidPrice(), 0);
+        assertEquals(100, small.bidPrice(9), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroDepth() {
+        new PriceLevelBook(0);
+    }
+
+    @Test
+    public void removedListenerIsNotNotified() {
+        PriceLevelBook.ChangeListener listener = (side, price, volume) -> changes.add("removed");
+        book.addListener(listener);
+        book.removeListener(listener);
+
+        book.apply(Order.OrderType.BID, 100, 2);
+
+        assertEquals(Collections.singletonList("BID 100.0 2.0"), changes);
+    }
+
+    /**
+     * @param bids price, volume, price, volume...
+     */
+    private static DepthBuffer snapshot(double... bids) {
+        DepthBuffer buffer = new DepthBuffer();
+        for (int i = 0; i < bids.length; i += 2) {
+            buffer.addBid(bids[i], bids[i + 1]);
+        }
+        return buffer;
+    }
+}
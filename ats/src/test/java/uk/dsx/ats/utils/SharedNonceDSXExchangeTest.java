@@ -0,0 +1,101 @@
+package uk.dsx.ats.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeFactory;
+import org.knowm.xchange.ExchangeSpecification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SharedNonceDSXExchangeTest {
+
+    private static final String API_KEY = "key";
+    private static final String SECRET_KEY = "c2VjcmV0";
+
+    private HttpServer server;
+    // nonces of one api key have to grow, as on dsx.uk
+    private final List<String> nonceErrors = new ArrayList<>();
+    private long lastNonce;
+    private int requests;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            long nonce;
+            try (InputStream input = exchange.getRequestBody(); Scanner scanner = new Scanner(input, "UTF-8")) {
+                nonce = nonce(scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "");
+            }
+            String body;
+            synchronized (this) {
+                requests++;
+                if (nonce > lastNonce) {
+                    lastNonce = nonce;
+                    body = "{\"success\":1,\"return\":{}}";
+                } else {
+                    nonceErrors.add(nonce + " after " + lastNonce);
+                    body = "{\"success\":0,\"error\":\"Parameter: nonce is invalid\"}";
+                }
+            }
+            byte[] response = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void mainAndWatchdogConnectionsShareNonces() throws Exception {
+        Exchange main = exchange(0);
+        // created later, a factory of its own would start above the main one and make it fail until it catches up
+        Thread.sleep(50);
+        Exchange watchdog = exchange(5000);
+
+        for (int i = 0; i < 5; i++) {
+            watchdog.getTradeService().getOpenOrders();
+            watchdog.getTradeService().getOpenOrders();
+            main.getTradeService().getOpenOrders();
+        }
+
+        assertEquals(15, requests);
+        assertTrue(nonceErrors.toString(), nonceErrors.isEmpty());
+    }
+
+    private Exchange exchange(int timeoutMillis) {
+        ExchangeSpecification exSpec = DSXUtils.exchangeSpecification(
+                "http://localhost:" + server.getAddress().getPort() + "/", API_KEY, SECRET_KEY, timeoutMillis);
+        exSpec.setShouldLoadRemoteMetaData(false);
+        return ExchangeFactory.INSTANCE.createExchange(exSpec);
+    }
+
+    private static long nonce(String form) throws IOException {
+        for (String param : form.split("&")) {
+            if (param.startsWith("nonce=")) {
+                return Long.parseLong(URLDecoder.decode(param.substring("nonce=".length()), "UTF-8"));
+            }
+        }
+        return 0;
+    }
+}
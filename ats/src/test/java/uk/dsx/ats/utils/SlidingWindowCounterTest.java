@@ -0,0 +1,98 @@
+package uk.dsx.ats.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlidingWindowCounterTest {
+
+    // 1 second window of 10 buckets, 100 ms each
+    private final SlidingWindowCounter counter = new SlidingWindowCounter(1000, 10);
+
+    @Test
+    public void sumsValuesInsideWindow() {
+        counter.add(10_000, 1);
+        counter.add(10_050, 2);
+        assertEquals(6, counter.add(10_950, 3));
+    }
+
+    @Test
+    public void dropsBucketsWhichLeftWindow() {
+        counter.add(10_000, 1);
+        counter.add(10_500, 2);
+
+        assertEquals(3, counter.sum(10_999));
+        assertEquals(2, counter.sum(11_000));
+        assertEquals(0, counter.sum(11_500));
+    }
+
+    @Test
+    public void reusesBucketAfterRollover() {
+        counter.add(10_000, 5);
+
+        // same ring index one window later, the old value is not added to the new one
+        assertEquals(1, counter.add(11_000, 1));
+        assertEquals(1, counter.sum(11_050));
+    }
+
+    @Test
+    public void ignoresBucketsOfEarlierRoundsAfterIdlePeriod() {
+        counter.add(10_000, 5);
+        counter.add(10_300, 7);
+
+        assertEquals(0, counter.sum(25_100));
+        assertEquals(1, counter.add(25_300, 1));
+    }
+
+    @Test
+    public void takesValueBackButNotBelowZero() {
+        counter.add(10_000, 3);
+
+        assertEquals(1, counter.add(10_000, -2));
+        assertEquals(0, counter.add(10_000, -5));
+    }
+
+    @Test
+    public void clampsToMaxValue() {
+        counter.add(10_000, SlidingWindowCounter.MAX_VALUE);
+
+        assertEquals(SlidingWindowCounter.MAX_VALUE, counter.add(10_000, 1));
+    }
+
+    @Test
+    public void countsConcurrentIncrements() throws Exception {
+        int threads = 8;
+        int increments = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < increments; j++) {
+                        // threads share buckets, each bucket is hit by several of them
+                        counter.add(10_000 + (thread + j) % 10 * 100, 1);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * increments, counter.sum(10_999));
+    }
+}
@@ -1,2 +1,7 @@
 echo "starting bot"
-java -jar ats-1.0-SNAPSHOT.jar
\ No newline at end of file
+rem startAts.bat profile - records flight recorder events enabled in ats.jfc to ats.jfr
+if "%1"=="profile" (
+    java -XX:StartFlightRecording=settings=ats.jfc,filename=ats.jfr,dumponexit=true -jar ats-1.0-SNAPSHOT.jar
+) else (
+    java -jar ats-1.0-SNAPSHOT.jar
+)
\ No newline at end of file
@@ -1,3 +1,8 @@
 #!/usr/bin/env bash
 echo "starting bot"
-java -jar ats/build/libs/ats-1.0-SNAPSHOT.jar
\ No newline at end of file
+# ./startAts.sh profile - records flight recorder events enabled in ats.jfc to ats.jfr
+if [ "$1" == "profile" ]; then
+    java -XX:StartFlightRecording=settings=ats.jfc,filename=ats.jfr,dumponexit=true -jar ats/build/libs/ats-1.0-SNAPSHOT.jar
+else
+    java -jar ats/build/libs/ats-1.0-SNAPSHOT.jar
+fi
\ No newline at end of file